@@ -0,0 +1,31 @@
+package workoffload;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * A generated graph and a cost model to optimize it with. The sizes are set by the benchmarks,
+ * as they don't all scale as far.
+ */
+@State(Scope.Benchmark)
+public abstract class GraphState {
+	@Param({"chain", "grid", "random", "scaleFree", "pattern"})
+	public String family;
+
+	@Param({"responseTime", "energyConsumption", "weightedTimeAndEnergy"})
+	public String model;
+
+	Offload.Node[] nodes;
+	CostModel costModel;
+
+	abstract int size();
+
+	@Setup
+	public void setUp() {
+		this.nodes = Graphs.generate(this.family, size(), 42);
+		this.costModel = Graphs.model(this.model);
+	}
+}
@@ -0,0 +1,165 @@
+package workoffload;
+
+import java.util.Random;
+
+
+/**
+ * Generators for the graphs we benchmark on. The first node is always unoffloadable and the
+ * costs are drawn from a seeded random generator, so the same parameters give the same graph.
+ */
+public class Graphs {
+	/**
+	 * @param family one of "chain", "grid", "random", "scaleFree" or "pattern"
+	 * @param size the number of nodes, rounded up to a multiple of five for "pattern"
+	 */
+	static public Offload.Node[] generate(String family, int size, long seed) {
+		Random random = new Random(seed);
+		if (family.equals("chain"))
+			return chain(size, random);
+		if (family.equals("grid"))
+			return grid(size, random);
+		if (family.equals("random"))
+			return randomSparse(size, 2, random);
+		if (family.equals("scaleFree"))
+			return scaleFree(size, 2, random);
+		if (family.equals("pattern"))
+			return pattern(size);
+
+		throw new IllegalArgumentException("unknown graph family " + family);
+	}
+
+	/**
+	 * @param name one of "responseTime", "energyConsumption" or "weightedTimeAndEnergy"
+	 */
+	static public CostModel model(String name) {
+		if (name.equals("responseTime"))
+			return CostModels.responseTime();
+		if (name.equals("energyConsumption"))
+			return CostModels.energyConsumption(0.9f, 0.3f, 1.3f);
+		if (name.equals("weightedTimeAndEnergy"))
+			return CostModels.weightedTimeAndEnergy(0.9f, 0.3f, 1.3f, 0.5f);
+
+		throw new IllegalArgumentException("unknown cost model " + name);
+	}
+
+	/**
+	 * Nodes with random costs, where running remotely is usually cheaper
+	 */
+	static Offload.Node[] nodes(int size, Random random) {
+		Offload.Node[] nodes = new Offload.Node[size];
+		for (int i = 0; i < size; i++) {
+			nodes[i] = new Offload.Node(1 + random.nextInt(20), 1 + random.nextInt(10), i != 0);
+		}
+
+		return nodes;
+	}
+
+	static int edgeCost(Random random) {
+		return 1 + random.nextInt(15);
+	}
+
+	/**
+	 * Each node is connected to the next one
+	 */
+	static Offload.Node[] chain(int size, Random random) {
+		Offload.Node[] nodes = nodes(size, random);
+		for (int i = 1; i < size; i++) {
+			nodes[i - 1].setEdge(nodes[i], edgeCost(random));
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * Nodes laid out in rows of the same length, each connected to the one to its right and the
+	 * one below
+	 */
+	static Offload.Node[] grid(int size, Random random) {
+		Offload.Node[] nodes = nodes(size, random);
+		int width = (int) Math.ceil(Math.sqrt(size));
+		for (int i = 0; i < size; i++) {
+			if ((i + 1) % width != 0 && i + 1 < size)
+				nodes[i].setEdge(nodes[i + 1], edgeCost(random));
+			if (i + width < size)
+				nodes[i].setEdge(nodes[i + width], edgeCost(random));
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * Each node is connected to a random earlier one, which keeps the graph connected, and to
+	 * 'extra' other random nodes
+	 */
+	static Offload.Node[] randomSparse(int size, int extra, Random random) {
+		Offload.Node[] nodes = nodes(size, random);
+		for (int i = 1; i < size; i++) {
+			nodes[random.nextInt(i)].setEdge(nodes[i], edgeCost(random));
+			for (int k = 0; k < extra; k++) {
+				int j = random.nextInt(size);
+				if (j != i)
+					nodes[j].setEdge(nodes[i], edgeCost(random));
+			}
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * Barabási-Albert graph: each node is connected to 'links' earlier nodes, picked with a
+	 * probability proportional to the number of edges they already have
+	 */
+	static Offload.Node[] scaleFree(int size, int links, Random random) {
+		Offload.Node[] nodes = nodes(size, random);
+		// every edge adds both of its ends here, so picking a random entry favours busy nodes
+		int[] ends = new int[2 * links * size];
+		int count = 0;
+		for (int i = 1; i < size; i++) {
+			for (int k = 0; k < links && k < i; k++) {
+				int j = count == 0 ? 0 : ends[random.nextInt(count)];
+				if (j == i)
+					continue;
+
+				nodes[j].setEdge(nodes[i], edgeCost(random));
+				ends[count++] = j;
+				ends[count++] = i;
+			}
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * The five-node pattern of OffloadLargeBenchmark repeated until we have at least 'size'
+	 * nodes, each copy connected to the previous one. As there, the first two nodes of every copy
+	 * but the first are unoffloadable, while those of the first copy are offloadable, so the
+	 * start node is the first node of the second copy.
+	 */
+	static Offload.Node[] pattern(int size) {
+		Offload.Node[] nodes = new Offload.Node[(size + 4) / 5 * 5];
+		for (int i = 0; i < nodes.length; i += 5) {
+			boolean isFirst = i == 0;
+			Offload.Node[] ns = new Offload.Node[5];
+			ns[0] = new Offload.Node(5, 4, isFirst);
+			ns[1] = new Offload.Node(3, 2, isFirst);
+			ns[2] = new Offload.Node(6, 3);
+			ns[3] = new Offload.Node(7, 4);
+			ns[4] = new Offload.Node(7, 3);
+
+			ns[0].setEdge(ns[1], 2);
+			ns[0].setEdge(ns[2], 1);
+			ns[1].setEdge(ns[3], 5);
+			ns[2].setEdge(ns[3], 8);
+			ns[2].setEdge(ns[4], 7);
+
+			if (i > 0) {
+				nodes[i - 2].setEdge(ns[1], 5);
+				nodes[i - 1].setEdge(ns[0], 5);
+			}
+
+			System.arraycopy(ns, 0, nodes, i, 5);
+		}
+
+		return nodes;
+	}
+}
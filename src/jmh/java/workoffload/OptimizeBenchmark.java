@@ -0,0 +1,82 @@
+package workoffload;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Time to optimize a graph from scratch, including compiling it, or again with the same Offload.
+ * Run with -prof gc to see how much each optimization allocates.
+ *
+ * MCOP runs a phase per node, so it only goes up to 10k nodes. Max-flow goes up to 100k.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OptimizeBenchmark {
+	public static class McopGraph extends GraphState {
+		@Param({"10", "100", "1000", "10000"})
+		public int size;
+
+		int size() {
+			return this.size;
+		}
+	}
+
+	public static class MaxFlowGraph extends GraphState {
+		@Param({"10", "100", "1000", "10000", "100000"})
+		public int size;
+
+		int size() {
+			return this.size;
+		}
+	}
+
+	/**
+	 * An Offload which optimizes the same graph over and over, as when replanning, with or
+	 * without keeping its working state
+	 */
+	@State(Scope.Thread)
+	public static class Replanning {
+		@Param({"false", "true"})
+		public boolean reuse;
+
+		Offload offload;
+
+		@Setup
+		public void setUp(McopGraph graph) {
+			this.offload = new Offload(graph.nodes);
+			this.offload.setReuse(this.reuse);
+		}
+	}
+
+	@Benchmark
+	public Offload.Result mcop(McopGraph graph) throws Exception {
+		return new Offload(graph.nodes).optimize(graph.costModel);
+	}
+
+	@Benchmark
+	public Offload.Result replan(McopGraph graph, Replanning state) throws Exception {
+		return state.offload.optimize(graph.costModel);
+	}
+
+	@Benchmark
+	public Offload.Result maxFlow(MaxFlowGraph graph) throws Exception {
+		Offload offload = new Offload(graph.nodes);
+		offload.setSolver(Solvers.maxFlow());
+		return offload.optimize(graph.costModel);
+	}
+}
@@ -0,0 +1,109 @@
+package workoffload;
+
+import java.util.Arrays;
+
+/**
+ * Max-priority queue over the vertices of a graph for whole-number keys within a known range,
+ * with a list of vertices per key.
+ *
+ * Adding a vertex or changing its key is O(1). Popping looks down from the highest key which may
+ * have vertices, so over a phase of the MCOP algorithm, where keys mostly grow, the cost is
+ * linear in the number of updates plus the size of the range. Vertices with the same key come
+ * out in the opposite order to the one in which they got it.
+ */
+class BucketQueue {
+	/** key of the first bucket */
+	final long min;
+	/** first vertex with each key minus min, or -1 */
+	final int[] head;
+	/** neighbours of each vertex in its bucket's list, or -1 */
+	final int[] next, previous;
+	/** bucket of each vertex or -1 if it's not in the queue */
+	final int[] bucket;
+	/** no bucket above this one has any vertices */
+	int top;
+	int size;
+
+	BucketQueue(int capacity, long min, long max) {
+		this.min = min;
+		this.head = new int[(int) (max - min) + 1];
+		this.next = new int[capacity];
+		this.previous = new int[capacity];
+		this.bucket = new int[capacity];
+		Arrays.fill(this.head, -1);
+		Arrays.fill(this.bucket, -1);
+	}
+
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	boolean contains(int v) {
+		return this.bucket[v] >= 0;
+	}
+
+	long key(int v) {
+		return this.min + this.bucket[v];
+	}
+
+	/**
+	 * Remove every vertex from the queue
+	 */
+	void clear() {
+		while (this.size > 0) {
+			pop();
+		}
+		this.top = 0;
+	}
+
+	/**
+	 * Add a vertex to the queue or change its key if it's already in it
+	 */
+	void put(int v, long key) {
+		int b = (int) (key - this.min);
+		if (this.bucket[v] == b)
+			return;
+
+		if (this.bucket[v] >= 0)
+			unlink(v);
+		else
+			this.size++;
+
+		int first = this.head[b];
+		this.next[v] = first;
+		this.previous[v] = -1;
+		if (first >= 0)
+			this.previous[first] = v;
+		this.head[b] = v;
+		this.bucket[v] = b;
+		if (b > this.top)
+			this.top = b;
+	}
+
+	/**
+	 * Remove a vertex with the highest key from the queue
+	 *
+	 * @return the vertex which was removed
+	 */
+	int pop() {
+		while (this.head[this.top] < 0) {
+			this.top--;
+		}
+
+		int v = this.head[this.top];
+		unlink(v);
+		this.bucket[v] = -1;
+		this.size--;
+		return v;
+	}
+
+	void unlink(int v) {
+		int next = this.next[v], previous = this.previous[v];
+		if (previous >= 0)
+			this.next[previous] = next;
+		else
+			this.head[this.bucket[v]] = next;
+		if (next >= 0)
+			this.previous[next] = previous;
+	}
+}
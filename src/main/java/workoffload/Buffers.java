@@ -0,0 +1,97 @@
+package workoffload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Where the large arrays of a graph (those with an entry per edge) live: on the heap, in direct
+ * buffers outside of it, or in memory-mapped files so they don't even need to fit in memory.
+ */
+abstract class Buffers {
+	/** arrays on the heap */
+	static final Buffers HEAP = new Buffers() {
+		@Override
+		ByteBuffer bytes(int size) {
+			return ByteBuffer.allocate(size);
+		}
+
+		@Override
+		IntBuffer ints(int size) {
+			return IntBuffer.allocate(size);
+		}
+
+		@Override
+		FloatBuffer floats(int size) {
+			return FloatBuffer.allocate(size);
+		}
+
+		@Override
+		DoubleBuffer doubles(int size) {
+			return DoubleBuffer.allocate(size);
+		}
+	};
+
+	/** direct buffers, outside of the heap */
+	static final Buffers DIRECT = new Buffers() {
+		@Override
+		ByteBuffer bytes(int size) {
+			return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		}
+	};
+
+	/**
+	 * Memory-mapped temporary files in the given directory. The files are deleted straight away,
+	 * the mapping stays valid until the buffer is garbage collected.
+	 */
+	static Buffers mapped(final File directory) {
+		return new Buffers() {
+			@Override
+			ByteBuffer bytes(int size) {
+				try {
+					File file = File.createTempFile("offload", ".bin", directory);
+					RandomAccessFile raf = new RandomAccessFile(file, "rw");
+					try {
+						return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.nativeOrder());
+					} finally {
+						raf.close();
+						file.delete();
+					}
+				} catch (IOException e) {
+					throw new IllegalStateException("could not map a buffer in " + directory, e);
+				}
+			}
+		};
+	}
+
+	abstract ByteBuffer bytes(int size);
+
+	IntBuffer ints(int size) {
+		return bytes(bytes(size, 4)).asIntBuffer();
+	}
+
+	FloatBuffer floats(int size) {
+		return bytes(bytes(size, 4)).asFloatBuffer();
+	}
+
+	DoubleBuffer doubles(int size) {
+		return bytes(bytes(size, 8)).asDoubleBuffer();
+	}
+
+	/**
+	 * @return the number of bytes for 'size' entries of 'width' bytes each
+	 */
+	static int bytes(int size, int width) {
+		long bytes = (long) size * width;
+		if (bytes > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(size + " entries don't fit in a single buffer");
+
+		return (int) bytes;
+	}
+}
@@ -0,0 +1,14 @@
+package workoffload;
+
+/**
+ * Cost model which can apply itself to whole arrays of costs, instead of one call per cost.
+ *
+ * Each method gives out[i] the same value as the scalar method gives in[i], for the first count
+ * entries. in and out may be the same array. Use the helpers in CostModels to apply any model to
+ * arrays, whether it implements this or not.
+ */
+public interface BulkCostModel extends CostModel {
+	void localCosts(float[] in, float[] out, int count);
+	void remoteCosts(float[] in, float[] out, int count);
+	void transmissionCosts(float[] in, float[] out, int count);
+}
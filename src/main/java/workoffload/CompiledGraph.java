@@ -0,0 +1,124 @@
+package workoffload;
+
+/**
+ * Graph of an Offload as it was when compiled, which doesn't change afterwards and can be
+ * optimized from any number of threads at the same time, e.g. by an OffloadService.
+ *
+ * Each optimization gets its own working state, while the compiled input is shared. The results
+ * hold the nodes of the Offload this was compiled from.
+ */
+public final class CompiledGraph {
+	/** the nodes of the Offload we were compiled from, for the results */
+	final Offload.Node[] nodes;
+	/** our own copy of the input and the solver settings, which nobody changes */
+	final Offload template;
+
+	CompiledGraph(Offload.Node[] nodes, Offload template) {
+		this.nodes = nodes;
+		this.template = template;
+	}
+
+	/**
+	 * Take the nodes and the current edge costs of an Offload, along with its solver, reductions,
+	 * components mode and pool. Changing the Offload afterwards doesn't change the compiled graph.
+	 */
+	public static CompiledGraph compile(Offload offload) {
+		offload.ensureCompiled();
+		Offload.Node[] nodes = offload.userNodes;
+		Offload.Node[] copies = new Offload.Node[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			copies[i] = new Offload.Node(nodes[i].localCost, nodes[i].remoteCost, nodes[i].offloadable);
+		}
+		int count = offload.edges.length;
+		float[] edgeCosts = new float[count];
+		for (int k = 0; k < count; k++) {
+			edgeCosts[k] = offload.edges[k].cost;
+		}
+
+		Offload template = new Offload(copies, offload.edgeSource.clone(), offload.edgeTarget.clone(), edgeCosts);
+		template.pool = offload.pool;
+		template.parallelThreshold = offload.parallelThreshold;
+		template.parallelDensity = offload.parallelDensity;
+		template.reduce = offload.reduce;
+		template.components = offload.components;
+		template.solver = offload.solver;
+		template.integerCosts = offload.integerCosts;
+		return new CompiledGraph(nodes, template);
+	}
+
+	public int size() {
+		return this.nodes.length;
+	}
+
+	/**
+	 * @return the number of edges, which are numbered in the order optimize() takes their costs
+	 */
+	public int edgeCount() {
+		return this.template.edges.length;
+	}
+
+	public Offload.Node node(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * @return the position of the node an edge starts from
+	 */
+	public int edgeSource(int k) {
+		return this.template.edgeSource[k];
+	}
+
+	/**
+	 * @return the position of the node an edge goes to
+	 */
+	public int edgeTarget(int k) {
+		return this.template.edgeTarget[k];
+	}
+
+	/**
+	 * @return the cost an edge had when we compiled the graph
+	 */
+	public float edgeCost(int k) {
+		return this.template.edges[k].cost;
+	}
+
+	/**
+	 * Optimize with the edge costs we compiled. This can be called from several threads at once;
+	 * a cost model which is used by several of them must be thread-safe, see OffloadService.
+	 */
+	public Offload.Result optimize(CostModel model) throws Exception {
+		return optimize(model, null);
+	}
+
+	/**
+	 * Optimize with other edge costs, e.g. for the network a request comes from
+	 *
+	 * @param edgeCosts the cost of each edge, in the order of edgeSource() and edgeTarget(), or
+	 *                  null for the costs we compiled
+	 */
+	public Offload.Result optimize(CostModel model, float[] edgeCosts) throws Exception {
+		if (edgeCosts != null && edgeCosts.length != edgeCount())
+			throw new IllegalArgumentException("expected " + edgeCount() + " edge costs, not " + edgeCosts.length);
+
+		long start = System.nanoTime();
+		Offload worker = new Offload(this.template);
+		if (edgeCosts != null)
+			worker.applyModel(model, edgeCosts);
+		else
+			worker.applyModel(model);
+		worker.reset();
+		worker.lastModel = model;
+		long prepared = System.nanoTime();
+		Offload.Result solved = worker.solve();
+
+		Offload.Result result = new Offload.Result(this.nodes, solved.partition);
+		result.cost = solved.cost;
+		result.originalCost = solved.originalCost;
+		result.savings = solved.savings;
+		result.partial = solved.partial;
+		result.stats = solved.stats;
+		result.stats.prepareNanos = prepared - start;
+		result.stats.totalNanos += prepared - start;
+		return result;
+	}
+}
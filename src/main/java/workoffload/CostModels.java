@@ -17,7 +17,80 @@ public class CostModels {
 		return new WeightedTimeEnergy(computing, idling, transmitting, omega);
 	}
 
-	static class ResponseTime implements CostModel {
+	/**
+	 * Multiply the transmission costs of another model by a factor, e.g. to model a change in the
+	 * available bandwidth.
+	 */
+	static public CostModel scaledTransmission(CostModel model, float factor) {
+		return new ScaledTransmission(model, factor);
+	}
+
+	/**
+	 * Response time over several tiers, for TieredOffload. The nodes' costs are used as they
+	 * are, and an edge between two tiers costs its cost times the factor for those tiers.
+	 *
+	 * @param factors factor for each pair of tiers, from and to
+	 */
+	static public TieredCostModel tieredResponseTime(float[][] factors) {
+		return new TieredResponseTime(factors);
+	}
+
+	/**
+	 * Apply a model's local cost to the first count entries of an array, in one go if it's a
+	 * BulkCostModel. in and out may be the same array.
+	 */
+	static public void localCosts(CostModel model, float[] in, float[] out, int count) {
+		if (model instanceof BulkCostModel) {
+			((BulkCostModel) model).localCosts(in, out, count);
+			return;
+		}
+
+		for (int i = 0; i < count; i++) {
+			out[i] = model.localCost(in[i]);
+		}
+	}
+
+	/**
+	 * Apply a model's remote cost to the first count entries of an array, see localCosts()
+	 */
+	static public void remoteCosts(CostModel model, float[] in, float[] out, int count) {
+		if (model instanceof BulkCostModel) {
+			((BulkCostModel) model).remoteCosts(in, out, count);
+			return;
+		}
+
+		for (int i = 0; i < count; i++) {
+			out[i] = model.remoteCost(in[i]);
+		}
+	}
+
+	/**
+	 * Apply a model's transmission cost to the first count entries of an array, see localCosts()
+	 */
+	static public void transmissionCosts(CostModel model, float[] in, float[] out, int count) {
+		if (model instanceof BulkCostModel) {
+			((BulkCostModel) model).transmissionCosts(in, out, count);
+			return;
+		}
+
+		for (int i = 0; i < count; i++) {
+			out[i] = model.transmissionCost(in[i]);
+		}
+	}
+
+	static void copy(float[] in, float[] out, int count) {
+		if (in != out)
+			System.arraycopy(in, 0, out, 0, count);
+	}
+
+	/** out[i] = in[i] * factor, for the first count entries */
+	static void scale(float[] in, float[] out, int count, float factor) {
+		for (int i = 0; i < count; i++) {
+			out[i] = in[i] * factor;
+		}
+	}
+
+	static class ResponseTime implements BulkCostModel {
 		public void setNodes(Offload.Node[] nodes) {
 			// noop
 		}
@@ -33,9 +106,21 @@ public class CostModels {
 		public float transmissionCost(float in) {
 			return in;
 		}
+
+		public void localCosts(float[] in, float[] out, int count) {
+			copy(in, out, count);
+		}
+
+		public void remoteCosts(float[] in, float[] out, int count) {
+			copy(in, out, count);
+		}
+
+		public void transmissionCosts(float[] in, float[] out, int count) {
+			copy(in, out, count);
+		}
 	}
 
-	static class EnergyConsumption implements CostModel {
+	static class EnergyConsumption implements BulkCostModel {
 		float computing, idling, transmitting;
 
 		EnergyConsumption(float computing, float idling, float transmitting) {
@@ -59,9 +144,21 @@ public class CostModels {
 		public float transmissionCost(float in) {
 			return in * this.transmitting;
 		}
+
+		public void localCosts(float[] in, float[] out, int count) {
+			scale(in, out, count, this.computing);
+		}
+
+		public void remoteCosts(float[] in, float[] out, int count) {
+			scale(in, out, count, this.idling);
+		}
+
+		public void transmissionCosts(float[] in, float[] out, int count) {
+			scale(in, out, count, this.transmitting);
+		}
 	}
 
-	static class WeightedTimeEnergy implements CostModel {
+	static class WeightedTimeEnergy implements BulkCostModel {
 		float computing, idling, transmitting, omega;
 		float localSum;
 
@@ -73,10 +170,13 @@ public class CostModels {
 		}
 
 		public void setNodes(final Offload.Node[] nodes) {
-			this.localSum = 0;
+			// set the sum at once, so requests for the same graph which share the model never
+			// see a partial one
+			float localSum = 0;
 			for (Offload.Node n : nodes) {
-				this.localSum += n.localCost;
+				localSum += n.localCost;
 			}
+			this.localSum = localSum;
 		}
 
 		float ensureNumber(float val) {
@@ -106,6 +206,85 @@ public class CostModels {
 
 			return ensureNumber(val);
 		}
+
+		/**
+		 * The scalar formula with what doesn't depend on the cost worked out once. The order of
+		 * the operations stays the same, so the results are the same to the last bit.
+		 */
+		void weighted(float[] in, float[] out, int count, float power) {
+			float omega = this.omega, rest = 1 - this.omega, localSum = this.localSum;
+			float energySum = localSum * this.computing;
+			for (int i = 0; i < count; i++) {
+				float val = (omega * in[i] / localSum) + (rest * in[i] * power / energySum);
+				out[i] = Float.isNaN(val) ? Float.MAX_VALUE : val;
+			}
+		}
+
+		public void localCosts(float[] in, float[] out, int count) {
+			weighted(in, out, count, this.computing);
+		}
+
+		public void remoteCosts(float[] in, float[] out, int count) {
+			weighted(in, out, count, this.idling);
+		}
+
+		public void transmissionCosts(float[] in, float[] out, int count) {
+			weighted(in, out, count, this.transmitting);
+		}
 	}
 
+	static class TieredResponseTime implements TieredCostModel {
+		final float[][] factors;
+
+		TieredResponseTime(float[][] factors) {
+			this.factors = factors;
+		}
+
+		public float nodeCost(int tier, float cost) {
+			return cost;
+		}
+
+		public float transmissionCost(int from, int to, float cost) {
+			return cost * this.factors[from][to];
+		}
+	}
+
+	static class ScaledTransmission implements BulkCostModel {
+		final CostModel model;
+		final float factor;
+
+		ScaledTransmission(CostModel model, float factor) {
+			this.model = model;
+			this.factor = factor;
+		}
+
+		public void setNodes(Offload.Node[] nodes) {
+			this.model.setNodes(nodes);
+		}
+
+		public float localCost(float in) {
+			return this.model.localCost(in);
+		}
+
+		public float remoteCost(float in) {
+			return this.model.remoteCost(in);
+		}
+
+		public float transmissionCost(float in) {
+			return this.model.transmissionCost(in) * this.factor;
+		}
+
+		public void localCosts(float[] in, float[] out, int count) {
+			CostModels.localCosts(this.model, in, out, count);
+		}
+
+		public void remoteCosts(float[] in, float[] out, int count) {
+			CostModels.remoteCosts(this.model, in, out, count);
+		}
+
+		public void transmissionCosts(float[] in, float[] out, int count) {
+			CostModels.transmissionCosts(this.model, in, out, count);
+			scale(out, out, count, this.factor);
+		}
+	}
 }
@@ -0,0 +1,207 @@
+package workoffload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Precomputed partitions for a range of transmission cost factors.
+ *
+ * As the transmission costs are scaled (e.g. as the bandwidth changes), the partition we choose
+ * only changes at a few points. This table is built once for a range of factors, using the
+ * transmission costs of the cost model multiplied by each factor, and holds the partition for
+ * each interval between those points. Looking up the partition for a factor is then a binary
+ * search instead of running the algorithm.
+ *
+ * Each partition's cost is linear in the factor, so the table finds the points where the
+ * partitions change by intersecting the cost lines of the partitions at the ends of an interval
+ * and optimizing at that factor, until no cheaper partition turns up. As the algorithm does not
+ * always find the cheapest partition, the table's partition for a factor can differ from the
+ * one optimize() would return for it.
+ */
+public class DecisionTable {
+	/** intervals narrower than this fraction of the whole range are not split any further */
+	static final float MIN_WIDTH = 1e-6f;
+
+	/** factor at which each interval starts, in increasing order */
+	final float[] starts;
+	/** result of the optimization for each interval */
+	final Offload.Result[] results;
+	/** cost of the computation for each interval's partition, which does not depend on the factor */
+	final float[] nodeCosts;
+	/** cost of the communication for each interval's partition, with a factor of 1 */
+	final float[] cutCosts;
+
+	DecisionTable(List<Entry> entries) {
+		int size = entries.size();
+		this.starts = new float[size];
+		this.results = new Offload.Result[size];
+		this.nodeCosts = new float[size];
+		this.cutCosts = new float[size];
+		for (int i = 0; i < size; i++) {
+			Entry e = entries.get(i);
+			this.starts[i] = e.start;
+			this.results[i] = e.point.result;
+			this.nodeCosts[i] = e.point.nodeCost;
+			this.cutCosts[i] = e.point.cutCost;
+		}
+	}
+
+	/**
+	 * Build the table for the transmission cost factors between min and max.
+	 *
+	 * @param offload the graph to optimize
+	 * @param model the cost model whose transmission costs we scale
+	 * @param min the lowest factor to consider
+	 * @param max the highest factor to consider
+	 */
+	public static DecisionTable build(Offload offload, CostModel model, float min, float max) throws Exception {
+		if (!(min <= max))
+			throw new IllegalArgumentException("min must not be larger than max");
+
+		offload.ensureCompiled();
+		Builder builder = new Builder(offload, model, (max - min) * MIN_WIDTH);
+
+		List<Entry> entries = new ArrayList<Entry>();
+		Point lo = builder.solve(min);
+		entries.add(new Entry(min, lo));
+		if (min < max) {
+			Point hi = builder.solve(max);
+			builder.split(entries, min, lo, max, hi);
+		}
+
+		return new DecisionTable(entries);
+	}
+
+	/**
+	 * @return the number of distinct intervals in the table
+	 */
+	public int size() {
+		return this.starts.length;
+	}
+
+	/**
+	 * Look up the result for a transmission cost factor. Factors outside of the range the table
+	 * was built for get the result for the closest end of the range.
+	 *
+	 * The costs in the result are those at the factor for which it was computed, use cost() to
+	 * get the cost at this factor.
+	 */
+	public Offload.Result lookup(float factor) {
+		return this.results[indexOf(factor)];
+	}
+
+	/**
+	 * @return the cost of the partition we'd use for this transmission cost factor
+	 */
+	public float cost(float factor) {
+		int i = indexOf(factor);
+		return this.nodeCosts[i] + factor * this.cutCosts[i];
+	}
+
+	int indexOf(float factor) {
+		int i = Arrays.binarySearch(this.starts, factor);
+		if (i < 0)
+			i = -i - 2;
+
+		return Math.max(0, i);
+	}
+
+	/** An optimization at some factor and the cost line of its partition */
+	static class Point {
+		final Offload.Result result;
+		final BitSet remote;
+		final float nodeCost, cutCost;
+
+		Point(Offload.Result result, BitSet remote, float nodeCost, float cutCost) {
+			this.result = result;
+			this.remote = remote;
+			this.nodeCost = nodeCost;
+			this.cutCost = cutCost;
+		}
+
+		float cost(float factor) {
+			return this.nodeCost + factor * this.cutCost;
+		}
+	}
+
+	/** The start of an interval in the table */
+	static class Entry {
+		final float start;
+		final Point point;
+
+		Entry(float start, Point point) {
+			this.start = start;
+			this.point = point;
+		}
+	}
+
+	static class Builder {
+		final CostModel model;
+		final float minWidth;
+		/** worker which runs the optimization for each factor */
+		final Offload worker;
+		/** the compiled graph with the unscaled costs, to get each partition's cost line */
+		final Offload base;
+
+		Builder(Offload offload, CostModel model, float minWidth) {
+			this.model = model;
+			this.minWidth = minWidth;
+			this.worker = new Offload(offload);
+			this.base = new Offload(offload);
+			this.base.applyModel(model);
+		}
+
+		Point solve(float factor) throws Exception {
+			CostModel scaled = CostModels.scaledTransmission(this.model, factor);
+			this.worker.applyModel(scaled);
+			this.worker.reset();
+			this.worker.lastModel = scaled;
+			Offload.Result result = this.worker.solve();
+			BitSet remote = this.worker.lastRemote;
+
+			return new Point(result, remote, this.base.nodeCost(remote), this.base.cutCost(remote));
+		}
+
+		/**
+		 * Add the entries for the partitions after lo's, up to and including hi's. The entry for
+		 * lo is already in the list.
+		 */
+		void split(List<Entry> entries, float loFactor, Point lo, float hiFactor, Point hi) throws Exception {
+			if (lo.remote.equals(hi.remote))
+				return;
+
+			if (hiFactor - loFactor <= this.minWidth) {
+				entries.add(new Entry(hiFactor, hi));
+				return;
+			}
+
+			// This is where the cost lines of both partitions meet. If something is cheaper there,
+			// it's a partition we haven't seen yet.
+			// If the lines don't meet inside the interval (the algorithm does not always find the
+			// cheapest partition) we fall back to splitting it in half.
+			float factor = (hi.nodeCost - lo.nodeCost) / (lo.cutCost - hi.cutCost);
+			boolean meet = factor > loFactor && factor < hiFactor;
+			if (!meet)
+				factor = (loFactor + hiFactor) / 2;
+			if (factor <= loFactor || factor >= hiFactor) {
+				entries.add(new Entry(hiFactor, hi));
+				return;
+			}
+
+			Point mid = this.solve(factor);
+			float tolerance = 1e-6f * Math.max(1, Math.abs(lo.cost(factor)));
+			if (meet && (mid.remote.equals(lo.remote) || mid.remote.equals(hi.remote)
+					|| mid.cost(factor) >= lo.cost(factor) - tolerance)) {
+				// both partitions are as good as it gets here, so this is where they swap
+				entries.add(new Entry(factor, hi));
+				return;
+			}
+
+			// If mid has the same partition as either end, one of these returns straight away
+			split(entries, loFactor, lo, factor, mid);
+			split(entries, factor, mid, hiFactor, hi);
+		}
+	}
+}
@@ -1,87 +1,176 @@
 package workoffload;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.nio.file.Files;
-import java.util.Dictionary;
-import java.util.Hashtable;
-
-
+import java.io.Writer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Writes graphs and results in the dot format, e.g. for GraphViz.
+ *
+ * The output is written as we go, to any Appendable, so large graphs don't have to fit in a
+ * String. Each node is identified by its position, in the array given to us or in the Offload
+ * the result is for.
+ */
 public class DotExporter {
-	static Dictionary<Offload.Node, String> nodeLabels(Offload.Node[] nodes) {
-		Dictionary<Offload.Node, String> nodeLabels = new Hashtable<Offload.Node, String>();
-		char label = 'a';
-		for (Offload.Node n : nodes) {
-			nodeLabels.put(n, String.format("%c", label));
-			label++;
-		}
+	static final String LOCAL_COLOR = "\"#66CCFF\"", REMOTE_COLOR = "\"#FF3300\"";
 
-		return nodeLabels;
-	}
+	public static String fromNodes(Offload.Node... nodes) {
+		StringBuilder bld = new StringBuilder();
+		try {
+			writeNodes(bld, nodes);
+		} catch (IOException e) {
+			// a StringBuilder doesn't throw
+			throw new AssertionError(e);
+		}
 
-	static String formatCost(Offload.Node node) {
-		return String.format("%.2f/%.2f", node.localCost, node.remoteCost);
+		return bld.toString();
 	}
 
-	public static String fromNodes(Offload.Node... nodes) {
-
-		Dictionary<Offload.Node, String> nodeLabels = nodeLabels(nodes);
+	public static String fromResult(Offload.Result result) {
 		StringBuilder bld = new StringBuilder();
+		try {
+			writeResult(bld, result, false);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
 
-		bld.append("graph workoffload {\n");
+		return bld.toString();
+	}
 
-		for (Offload.Node n : nodes) {
-			bld.append(String.format("%s [label=\"%s\"];\n", nodeLabels.get(n),
-					formatCost(n)));
+	/**
+	 * Write the graph of the given nodes, before optimizing it
+	 */
+	public static void writeNodes(Appendable out, Offload.Node... nodes) throws IOException {
+		Map<Offload.Node, Integer> positions = new HashMap<Offload.Node, Integer>(2 * nodes.length);
+		for (int i = 0; i < nodes.length; i++) {
+			positions.put(nodes[i], i);
 		}
 
-		for (Offload.Node n : nodes) {
-			for (Offload.Edge e : n.edges) {
-				bld.append(nodeLabels.get(n) + " -- " + nodeLabels.get(e.node) + ";\n");
+		out.append("graph workoffload {\n");
+		for (int i = 0; i < nodes.length; i++) {
+			appendNode(out, i, nodes[i]);
+			out.append("];\n");
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			for (Offload.Edge e : nodes[i].edges) {
+				Integer j = positions.get(e.node);
+				if (j != null)
+					appendEdge(out, i, j);
 			}
 		}
+		out.append("}");
+	}
 
-		// tail for "graph {"
-		bld.append("}");
-
-		return bld.toString();
+	/**
+	 * Write the graph of the given nodes to a stream in UTF-8, see writeNodes(Appendable, ...)
+	 */
+	public static void writeNodes(OutputStream stream, Offload.Node... nodes) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+		writeNodes(out, nodes);
+		out.flush();
 	}
 
-	public static String fromResult(Offload.Result result) {
-		Offload.Node[] nodes = new Offload.Node[result.local.size() + result.remote.size()];
+	/**
+	 * Write the graph of a result with its nodes colored by where they should run, blue for
+	 * local and red for remote. The colors come from result.partition, which the local and remote
+	 * sets are views of.
+	 *
+	 * @param cutOnly whether to leave out everything but the edges between local and remote nodes
+	 *                and the nodes they connect, to keep large graphs readable
+	 */
+	public static void writeResult(Appendable out, Offload.Result result, boolean cutOnly) throws IOException {
+		Offload.Node[] nodes = result.nodes;
+		BitSet remote = result.partition;
+		BitSet shown = new BitSet(nodes.length);
+		if (cutOnly) {
+			for (int i = 0; i < nodes.length; i++) {
+				for (Offload.Edge e : nodes[i].edges) {
+					int j = result.indexOf(e.node);
+					if (j >= 0 && remote.get(i) != remote.get(j)) {
+						shown.set(i);
+						shown.set(j);
+					}
+				}
+			}
+		} else {
+			shown.set(0, nodes.length);
+		}
 
-		int offset = 0;
-		for (Offload.Node n : result.local) {
-			nodes[offset] = n;
-			offset++;
+		out.append("graph workoffload {\n");
+		for (int i = shown.nextSetBit(0); i >= 0; i = shown.nextSetBit(i + 1)) {
+			appendNode(out, i, nodes[i]);
+			out.append(" fillcolor=").append(remote.get(i) ? REMOTE_COLOR : LOCAL_COLOR).append(" style=filled];\n");
 		}
-		for (Offload.Node n : result.remote) {
-			nodes[offset] = n;
-			offset++;
+		for (int i = shown.nextSetBit(0); i >= 0; i = shown.nextSetBit(i + 1)) {
+			for (Offload.Edge e : nodes[i].edges) {
+				int j = result.indexOf(e.node);
+				if (j >= 0 && (!cutOnly || remote.get(i) != remote.get(j)))
+					appendEdge(out, i, j);
+			}
 		}
+		out.append("}");
+	}
 
-		Dictionary<Offload.Node, String> nodeLabels = nodeLabels(nodes);
-		StringBuilder bld = new StringBuilder();
+	/**
+	 * Write the graph of a result to a stream in UTF-8, see writeResult(Appendable, ...)
+	 */
+	public static void writeResult(OutputStream stream, Offload.Result result, boolean cutOnly) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+		writeResult(out, result, cutOnly);
+		out.flush();
+	}
 
-		bld.append("graph workoffload {\n");
+	/**
+	 * Write the node's id and label, leaving its attributes open for more
+	 */
+	static void appendNode(Appendable out, int i, Offload.Node node) throws IOException {
+		appendInt(out, i);
+		out.append(" [label=\"");
+		appendCost(out, node.localCost);
+		out.append('/');
+		appendCost(out, node.remoteCost);
+		out.append('"');
+	}
 
-		for (Offload.Node n : nodes) {
-			String color = result.remote.contains(n) ? "\"#FF3300\"" : "\"#66CCFF\"";
-			bld.append(String.format("%s [label=\"%s\" fillcolor=%s style=filled];\n",
-					nodeLabels.get(n), formatCost(n), color));
-		}
+	static void appendEdge(Appendable out, int i, int j) throws IOException {
+		appendInt(out, i);
+		out.append(" -- ");
+		appendInt(out, j);
+		out.append(";\n");
+	}
 
-		for (Offload.Node n : nodes) {
-			for (Offload.Edge e : n.edges) {
-				bld.append(nodeLabels.get(n) + " -- " + nodeLabels.get(e.node) + ";\n");
-			}
+	static void appendInt(Appendable out, long value) throws IOException {
+		if (value < 0) {
+			out.append('-');
+			value = -value;
 		}
+		if (value >= 10)
+			appendInt(out, value / 10);
+		out.append((char) ('0' + value % 10));
+	}
 
-		// tail for "graph {"
-		bld.append("}");
+	/**
+	 * Write a cost with two decimals, like "%.2f" without the formatting machinery
+	 */
+	static void appendCost(Appendable out, float cost) throws IOException {
+		if (Float.isNaN(cost) || Float.isInfinite(cost) || Math.abs(cost) >= 1e15f) {
+			out.append(Float.toString(cost));
+			return;
+		}
 
-		return bld.toString();
+		long hundredths = Math.round(Math.abs((double) cost) * 100);
+		if (cost < 0 && hundredths != 0)
+			out.append('-');
+		appendInt(out, hundredths / 100);
+		out.append('.');
+		out.append((char) ('0' + hundredths / 10 % 10));
+		out.append((char) ('0' + hundredths % 10));
 	}
 
 	public static void main(String[] args)
@@ -101,12 +190,13 @@ public class DotExporter {
 		d.setEdge(e, 2);
 		d.setEdge(f, 1);
 		e.setEdge(f, 1);
-		
+
 		Offload offload = new Offload(a, b, c, d, e, f);
 		Offload.Result result = offload.optimize(CostModels.responseTime());
-		
-		
+
+
 		//System.out.println(fromNodes(a, b, c, d, e, f));
-		System.out.println(fromResult(result));
+		writeResult((Appendable) System.out, result, false);
+		System.out.println();
 	}
 }
@@ -0,0 +1,191 @@
+package workoffload;
+
+import java.util.Arrays;
+
+/**
+ * Builds an Offload from nodes numbered in the order they're added and edges between those
+ * numbers, e.g. for graphs generated from profiling data.
+ *
+ * Nodes and edges go into arrays as they're added. Edges between the same pair of nodes (in
+ * either direction) are merged once, when building, with the last one winning like with
+ * Node.setEdge(). The Offload gets the graph already compiled, without looking up any nodes.
+ */
+public class GraphBuilder {
+	float[] localCosts, remoteCosts;
+	boolean[] offloadable;
+	int size;
+
+	int[] edgeSource, edgeTarget;
+	float[] edgeCosts;
+	int edgeCount;
+
+	/** the nodes we built, once we have */
+	Offload.Node[] nodes;
+
+	public GraphBuilder() {
+		this(16, 16);
+	}
+
+	/**
+	 * @param nodes the number of nodes we expect
+	 * @param edges the number of edges we expect
+	 */
+	public GraphBuilder(int nodes, int edges) {
+		this.localCosts = new float[Math.max(nodes, 1)];
+		this.remoteCosts = new float[this.localCosts.length];
+		this.offloadable = new boolean[this.localCosts.length];
+		this.edgeSource = new int[Math.max(edges, 1)];
+		this.edgeTarget = new int[this.edgeSource.length];
+		this.edgeCosts = new float[this.edgeSource.length];
+	}
+
+	/**
+	 * @return the number of the node, starting at 0
+	 */
+	public int addNode(float localCost, float remoteCost, boolean offloadable) {
+		checkBuilt();
+		if (this.size == this.localCosts.length) {
+			int capacity = 2 * this.size;
+			this.localCosts = Arrays.copyOf(this.localCosts, capacity);
+			this.remoteCosts = Arrays.copyOf(this.remoteCosts, capacity);
+			this.offloadable = Arrays.copyOf(this.offloadable, capacity);
+		}
+
+		this.localCosts[this.size] = localCost;
+		this.remoteCosts[this.size] = remoteCost;
+		this.offloadable[this.size] = offloadable;
+		return this.size++;
+	}
+
+	/**
+	 * Add an edge between two nodes we added. An edge from a node to itself is never cut, so it's
+	 * left out.
+	 */
+	public void addEdge(int u, int v, float cost) {
+		checkBuilt();
+		checkNode(u);
+		checkNode(v);
+		ensureEdges(this.edgeCount + 1);
+
+		this.edgeSource[this.edgeCount] = u;
+		this.edgeTarget[this.edgeCount] = v;
+		this.edgeCosts[this.edgeCount] = cost;
+		this.edgeCount++;
+	}
+
+	/**
+	 * Add an edge between each source and the target at the same position, with the cost at that
+	 * position
+	 */
+	public void addEdges(int[] sources, int[] targets, float[] costs) {
+		checkBuilt();
+		int count = sources.length;
+		if (targets.length != count || costs.length != count)
+			throw new IllegalArgumentException("sources, targets and costs must have the same length");
+		for (int k = 0; k < count; k++) {
+			checkNode(sources[k]);
+			checkNode(targets[k]);
+		}
+
+		ensureEdges(this.edgeCount + count);
+		System.arraycopy(sources, 0, this.edgeSource, this.edgeCount, count);
+		System.arraycopy(targets, 0, this.edgeTarget, this.edgeCount, count);
+		System.arraycopy(costs, 0, this.edgeCosts, this.edgeCount, count);
+		this.edgeCount += count;
+	}
+
+	void ensureEdges(long count) {
+		if (count > Integer.MAX_VALUE)
+			throw new IllegalStateException("too many edges");
+		if (count <= this.edgeSource.length)
+			return;
+
+		int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(count, 2L * this.edgeSource.length));
+		this.edgeSource = Arrays.copyOf(this.edgeSource, capacity);
+		this.edgeTarget = Arrays.copyOf(this.edgeTarget, capacity);
+		this.edgeCosts = Arrays.copyOf(this.edgeCosts, capacity);
+	}
+
+	void checkNode(int v) {
+		if (v < 0 || v >= this.size)
+			throw new IndexOutOfBoundsException("no node " + v);
+	}
+
+	void checkBuilt() {
+		if (this.nodes != null)
+			throw new IllegalStateException("the graph was already built");
+	}
+
+	/**
+	 * Create the Offload for the graph. The builder can't be changed afterwards, but node() gives
+	 * the Node for each number, e.g. to change the cost of an edge with setEdge().
+	 */
+	public Offload build() {
+		checkBuilt();
+		int size = this.size;
+		Offload.Node[] nodes = new Offload.Node[size];
+		for (int v = 0; v < size; v++) {
+			nodes[v] = new Offload.Node(this.localCosts[v], this.remoteCosts[v], this.offloadable[v]);
+		}
+
+		// Sort the edges by their lower node, keeping the order they were added in, so that the
+		// edges of each pair of nodes come together.
+		int[] first = new int[size + 1];
+		for (int k = 0; k < this.edgeCount; k++) {
+			first[Math.min(this.edgeSource[k], this.edgeTarget[k]) + 1]++;
+		}
+		for (int v = 0; v < size; v++) {
+			first[v + 1] += first[v];
+		}
+		int[] order = new int[this.edgeCount];
+		int[] next = Arrays.copyOf(first, size);
+		for (int k = 0; k < this.edgeCount; k++) {
+			order[next[Math.min(this.edgeSource[k], this.edgeTarget[k])]++] = k;
+		}
+
+		// slot[w] is where the edge between the current lower node and w went, valid while
+		// owner[w] is the lower node plus one
+		int[] slot = new int[size], owner = new int[size];
+		int[] edgeSource = new int[this.edgeCount], edgeTarget = new int[this.edgeCount];
+		float[] edgeCosts = new float[this.edgeCount];
+		int count = 0;
+		for (int u = 0; u < size; u++) {
+			for (int i = first[u]; i < first[u + 1]; i++) {
+				int k = order[i];
+				int w = Math.max(this.edgeSource[k], this.edgeTarget[k]);
+				if (w == u)
+					continue;
+
+				if (owner[w] == u + 1) {
+					edgeCosts[slot[w]] = this.edgeCosts[k];
+					continue;
+				}
+
+				owner[w] = u + 1;
+				slot[w] = count;
+				edgeSource[count] = u;
+				edgeTarget[count] = w;
+				edgeCosts[count] = this.edgeCosts[k];
+				count++;
+			}
+		}
+
+		this.nodes = nodes;
+		this.localCosts = this.remoteCosts = null;
+		this.offloadable = null;
+		this.edgeSource = this.edgeTarget = null;
+		this.edgeCosts = null;
+		return new Offload(nodes, Arrays.copyOf(edgeSource, count), Arrays.copyOf(edgeTarget, count),
+				Arrays.copyOf(edgeCosts, count));
+	}
+
+	/**
+	 * @return the Node for a number, once the graph is built
+	 */
+	public Offload.Node node(int v) {
+		if (this.nodes == null)
+			throw new IllegalStateException("the graph wasn't built yet");
+
+		return this.nodes[v];
+	}
+}
@@ -0,0 +1,337 @@
+package workoffload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled graph saved to a file, along with results computed for it, e.g. on a build server.
+ *
+ * Loading maps the file into memory, so nothing is read until it's used. graph() works straight
+ * on the mapped file, while offload() reads it in one go into an Offload, without going through
+ * Node.setEdge(). Like the classes they come from, graph() adds up edges between the same
+ * nodes, while offload() takes the last one.
+ *
+ * The file is little-endian and every section starts on a multiple of four bytes:
+ *
+ * - header: "OFLD", version, number of nodes n, number of edges e, number of results r
+ * - local costs (float[n]), remote costs (float[n]), 1 for unoffloadable nodes (byte[n])
+ * - source and target node of each edge (int[e] each), cost of each edge (float[e])
+ * - for each result: length of its label (int), label (UTF-8), cost (float), original cost
+ *   (float) and the remote nodes (int[(n + 31) / 32], bit i of word i / 32)
+ */
+public class GraphSnapshot {
+	/** "OFLD" read as a little-endian int */
+	static final int MAGIC = 0x444c464f;
+	static final int VERSION = 1;
+	static final int HEADER = 20;
+
+	final ByteBuffer buffer;
+	final int size, edgeCount;
+	final FloatBuffer localCosts, remoteCosts;
+	/** 1 for unoffloadable nodes, the same as OffHeapGraph */
+	final ByteBuffer unoffloadable;
+	final IntBuffer edgeSource, edgeTarget;
+	final FloatBuffer edgeCosts;
+	/** where the cost of each result starts, by label */
+	final Map<String, Integer> results = new LinkedHashMap<String, Integer>();
+	Offload offload;
+
+	GraphSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC)
+			throw new IOException("not a graph snapshot");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("unsupported graph snapshot version " + buffer.getInt(4));
+
+		this.size = buffer.getInt(8);
+		this.edgeCount = buffer.getInt(12);
+		int resultCount = buffer.getInt(16);
+		if (this.size < 0 || this.edgeCount < 0 || resultCount < 0
+				|| (long) HEADER + nodeBytes(this.size) + 12L * this.edgeCount > buffer.limit())
+			throw new IOException("truncated graph snapshot");
+
+		int offset = HEADER;
+		this.localCosts = section(offset, 4 * this.size).asFloatBuffer();
+		this.remoteCosts = section(offset += 4 * this.size, 4 * this.size).asFloatBuffer();
+		this.unoffloadable = section(offset += 4 * this.size, this.size);
+		offset = HEADER + (int) nodeBytes(this.size);
+		this.edgeSource = section(offset, 4 * this.edgeCount).asIntBuffer();
+		this.edgeTarget = section(offset += 4 * this.edgeCount, 4 * this.edgeCount).asIntBuffer();
+		this.edgeCosts = section(offset += 4 * this.edgeCount, 4 * this.edgeCount).asFloatBuffer();
+		offset += 4 * this.edgeCount;
+		for (int k = 0; k < this.edgeCount; k++) {
+			int u = this.edgeSource.get(k), v = this.edgeTarget.get(k);
+			if (u < 0 || u >= this.size || v < 0 || v >= this.size)
+				throw new IOException("edge " + k + " of the graph snapshot connects a node which isn't in it");
+		}
+
+		for (int r = 0; r < resultCount; r++) {
+			if (offset + 4 > buffer.limit())
+				throw new IOException("truncated graph snapshot");
+
+			int length = buffer.getInt(offset);
+			long costs = offset + 4L + padded(length);
+			if (length < 0 || costs + 8 + 4L * words(this.size) > buffer.limit())
+				throw new IOException("truncated graph snapshot");
+
+			byte[] label = new byte[length];
+			ByteBuffer bytes = buffer.duplicate();
+			bytes.position(offset + 4);
+			bytes.get(label);
+			this.results.put(new String(label, "UTF-8"), (int) costs);
+			offset = (int) costs + 8 + 4 * words(this.size);
+		}
+	}
+
+	/**
+	 * Map a snapshot file. The file must not change while the snapshot is in use.
+	 */
+	public static GraphSnapshot load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return new GraphSnapshot(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Save the compiled graph of an Offload, with the costs its nodes and edges have now.
+	 *
+	 * @param results results to save along with the graph, by label, e.g. one per cost model.
+	 *                They must be results for this Offload's nodes.
+	 */
+	public static void write(File file, Offload offload, Map<String, Offload.Result> results) throws IOException {
+		offload.ensureCompiled();
+		Offload.Node[] nodes = offload.userNodes;
+		int size = nodes.length, edgeCount = offload.edges.length;
+		float[] localCosts = new float[size], remoteCosts = new float[size];
+		byte[] unoffloadable = new byte[size];
+		for (int i = 0; i < size; i++) {
+			localCosts[i] = nodes[i].localCost;
+			remoteCosts[i] = nodes[i].remoteCost;
+			unoffloadable[i] = (byte) (nodes[i].offloadable ? 0 : 1);
+		}
+		float[] edgeCosts = new float[edgeCount];
+		for (int k = 0; k < edgeCount; k++) {
+			edgeCosts[k] = offload.edges[k].cost;
+		}
+
+		Map<String, Saved> saved = new LinkedHashMap<String, Saved>();
+		for (Map.Entry<String, Offload.Result> entry : results.entrySet()) {
+			Offload.Result result = entry.getValue();
+			saved.put(entry.getKey(), new Saved(result.cost, result.originalCost, result.partition));
+		}
+
+		write(file, size, edgeCount, FloatBuffer.wrap(localCosts), FloatBuffer.wrap(remoteCosts),
+				ByteBuffer.wrap(unoffloadable), IntBuffer.wrap(offload.edgeSource), IntBuffer.wrap(offload.edgeTarget),
+				FloatBuffer.wrap(edgeCosts), saved);
+	}
+
+	/**
+	 * Save an OffHeapGraph, without any results
+	 */
+	public static void write(File file, OffHeapGraph graph) throws IOException {
+		write(file, graph.size, graph.edgeCount, graph.localCosts.duplicate(), graph.remoteCosts.duplicate(),
+				graph.offloadable.duplicate(), graph.edgeSource.duplicate(), graph.edgeTarget.duplicate(),
+				graph.edgeCosts.duplicate(), new LinkedHashMap<String, Saved>());
+	}
+
+	static void write(File file, int size, int edgeCount, FloatBuffer localCosts, FloatBuffer remoteCosts,
+			ByteBuffer unoffloadable, IntBuffer edgeSource, IntBuffer edgeTarget, FloatBuffer edgeCosts,
+			Map<String, Saved> results) throws IOException {
+		long length = HEADER + nodeBytes(size) + 12L * edgeCount;
+		Map<byte[], Saved> labels = new LinkedHashMap<byte[], Saved>();
+		for (Map.Entry<String, Saved> entry : results.entrySet()) {
+			byte[] label = entry.getKey().getBytes("UTF-8");
+			labels.put(label, entry.getValue());
+			length += 4 + padded(label.length) + 8 + 4 * words(size);
+		}
+		if (length > Integer.MAX_VALUE)
+			throw new IOException("graph too large for a snapshot");
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+			ByteBuffer out = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(edgeCount).putInt(results.size());
+
+			put(out, localCosts, size);
+			put(out, remoteCosts, size);
+			unoffloadable.limit(size);
+			out.put(unoffloadable);
+			out.position(HEADER + (int) nodeBytes(size));
+
+			edgeSource.limit(edgeCount);
+			edgeTarget.limit(edgeCount);
+			out.asIntBuffer().put(edgeSource);
+			out.position(out.position() + 4 * edgeCount);
+			out.asIntBuffer().put(edgeTarget);
+			out.position(out.position() + 4 * edgeCount);
+			put(out, edgeCosts, edgeCount);
+
+			for (Map.Entry<byte[], Saved> entry : labels.entrySet()) {
+				byte[] label = entry.getKey();
+				Saved result = entry.getValue();
+				out.putInt(label.length).put(label);
+				out.position(out.position() + (int) padded(label.length) - label.length);
+				out.putFloat(result.cost).putFloat(result.originalCost);
+
+				int[] words = new int[words(size)];
+				for (int i = result.remote.nextSetBit(0); i >= 0 && i < size; i = result.remote.nextSetBit(i + 1)) {
+					words[i >>> 5] |= 1 << (i & 31);
+				}
+				out.asIntBuffer().put(words);
+				out.position(out.position() + 4 * words.length);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	static void put(ByteBuffer out, FloatBuffer values, int count) {
+		values.limit(count);
+		out.asFloatBuffer().put(values);
+		out.position(out.position() + 4 * count);
+	}
+
+	/** bytes taken by the node costs and flags */
+	static long nodeBytes(int size) {
+		return 8L * size + padded(size);
+	}
+
+	static long padded(long bytes) {
+		return (bytes + 3) & ~3L;
+	}
+
+	static int words(int size) {
+		return (size + 31) >>> 5;
+	}
+
+	ByteBuffer section(int offset, int length) {
+		ByteBuffer section = this.buffer.duplicate();
+		section.position(offset);
+		section = section.slice();
+		section.limit(length);
+		return section.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int edgeCount() {
+		return this.edgeCount;
+	}
+
+	/**
+	 * The graph as it is in the file, without copying it. It can't be changed.
+	 */
+	public OffHeapGraph graph() {
+		return new OffHeapGraph(this.size, this.edgeCount, this.edgeCount, Buffers.DIRECT, this.localCosts,
+				this.remoteCosts, this.unoffloadable, this.edgeSource, this.edgeTarget, this.edgeCosts);
+	}
+
+	/**
+	 * The graph as an Offload, created the first time this is called. Its nodes are in the same
+	 * order as in the file, edges from a node to itself are left out.
+	 */
+	public Offload offload() {
+		if (this.offload != null)
+			return this.offload;
+
+		Offload.Node[] nodes = new Offload.Node[this.size];
+		for (int i = 0; i < this.size; i++) {
+			nodes[i] = new Offload.Node(this.localCosts.get(i), this.remoteCosts.get(i), this.unoffloadable.get(i) == 0);
+		}
+		// an OffHeapGraph may have edges from a node to itself, which are never cut and which the
+		// Offload doesn't expect
+		int count = 0;
+		for (int k = 0; k < this.edgeCount; k++) {
+			if (this.edgeSource.get(k) != this.edgeTarget.get(k))
+				count++;
+		}
+		int[] edgeSource = new int[count], edgeTarget = new int[count];
+		float[] edgeCosts = new float[count];
+		int e = 0;
+		for (int k = 0; k < this.edgeCount; k++) {
+			int u = this.edgeSource.get(k), v = this.edgeTarget.get(k);
+			if (u == v)
+				continue;
+
+			edgeSource[e] = u;
+			edgeTarget[e] = v;
+			edgeCosts[e] = this.edgeCosts.get(k);
+			e++;
+		}
+
+		this.offload = new Offload(nodes, edgeSource, edgeTarget, edgeCosts);
+		return this.offload;
+	}
+
+	/**
+	 * @return the labels of the results in the file
+	 */
+	public Set<String> results() {
+		return this.results.keySet();
+	}
+
+	/**
+	 * @return the nodes the result with this label computes remotely, by position, or null if
+	 *         there's no such result
+	 */
+	public BitSet remote(String label) {
+		Integer offset = this.results.get(label);
+		if (offset == null)
+			return null;
+
+		BitSet remote = new BitSet(this.size);
+		int words = offset + 8;
+		for (int i = 0; i < this.size; i++) {
+			if ((this.buffer.getInt(words + 4 * (i >>> 5)) & (1 << (i & 31))) != 0)
+				remote.set(i);
+		}
+
+		return remote;
+	}
+
+	/**
+	 * @return the result with this label for the nodes of offload(), or null if there's no such
+	 *         result
+	 */
+	public Offload.Result result(String label) {
+		BitSet remote = remote(label);
+		if (remote == null)
+			return null;
+
+		Offload.Result result = new Offload.Result(offload().userNodes, remote);
+		int offset = this.results.get(label);
+		result.cost = this.buffer.getFloat(offset);
+		result.originalCost = this.buffer.getFloat(offset + 4);
+		result.savings = 1 - (result.cost / result.originalCost);
+		result.stats = new OptimizationStats();
+		return result;
+	}
+
+	/** A result as we save it */
+	static class Saved {
+		final float cost, originalCost;
+		final BitSet remote;
+
+		Saved(float cost, float originalCost, BitSet remote) {
+			this.cost = cost;
+			this.originalCost = originalCost;
+			this.remote = remote;
+		}
+	}
+}
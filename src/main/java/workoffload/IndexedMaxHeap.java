@@ -0,0 +1,133 @@
+package workoffload;
+
+import java.util.Arrays;
+
+/**
+ * Binary max-heap over the vertices of a graph, keyed by a float priority.
+ *
+ * Each vertex can be in the heap at most once and we keep track of where it is, so its key can be
+ * changed in O(log n). Ties are broken on the lowest vertex index, which is the order in which a
+ * linear scan over the vertices would find them.
+ */
+class IndexedMaxHeap {
+	/** vertices in heap order, only the first size entries are valid */
+	final int[] heap;
+	/** position of each vertex in heap or -1 if it's not in it */
+	final int[] position;
+	/** priority of each vertex, only valid for vertices in the heap */
+	final float[] keys;
+	int size;
+
+	IndexedMaxHeap(int capacity) {
+		this.heap = new int[capacity];
+		this.position = new int[capacity];
+		this.keys = new float[capacity];
+		Arrays.fill(this.position, -1);
+	}
+
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	boolean contains(int v) {
+		return this.position[v] >= 0;
+	}
+
+	float key(int v) {
+		return this.keys[v];
+	}
+
+	/**
+	 * Remove every vertex from the heap
+	 */
+	void clear() {
+		for (int i = 0; i < this.size; i++) {
+			this.position[this.heap[i]] = -1;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Add a vertex to the heap or change its priority if it's already in it
+	 */
+	void put(int v, float key) {
+		int pos = this.position[v];
+		if (pos < 0) {
+			pos = this.size++;
+			this.heap[pos] = v;
+			this.position[v] = pos;
+			this.keys[v] = key;
+			siftUp(pos);
+			return;
+		}
+
+		float old = this.keys[v];
+		this.keys[v] = key;
+		if (key > old)
+			siftUp(pos);
+		else if (key < old)
+			siftDown(pos);
+	}
+
+	/**
+	 * Remove the vertex with the highest priority from the heap
+	 *
+	 * @return the vertex which was removed
+	 */
+	int pop() {
+		int top = this.heap[0];
+		int last = this.heap[--this.size];
+		this.position[top] = -1;
+		if (this.size > 0) {
+			this.heap[0] = last;
+			this.position[last] = 0;
+			siftDown(0);
+		}
+
+		return top;
+	}
+
+	/** whether vertex a should be closer to the top than vertex b */
+	boolean before(int a, int b) {
+		float ka = this.keys[a], kb = this.keys[b];
+		return ka > kb || (ka == kb && a < b);
+	}
+
+	void siftUp(int pos) {
+		int v = this.heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			int p = this.heap[parent];
+			if (!before(v, p))
+				break;
+
+			this.heap[pos] = p;
+			this.position[p] = pos;
+			pos = parent;
+		}
+		this.heap[pos] = v;
+		this.position[v] = pos;
+	}
+
+	void siftDown(int pos) {
+		int v = this.heap[pos];
+		int half = this.size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			int c = this.heap[child];
+			int right = child + 1;
+			if (right < this.size && before(this.heap[right], c)) {
+				child = right;
+				c = this.heap[child];
+			}
+			if (!before(c, v))
+				break;
+
+			this.heap[pos] = c;
+			this.position[c] = pos;
+			pos = child;
+		}
+		this.heap[pos] = v;
+		this.position[v] = pos;
+	}
+}
@@ -0,0 +1,307 @@
+package workoffload;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Finds the cheapest partition as a minimum cut between the local side, which holds the source,
+ * and a virtual node standing for the remote side, the sink.
+ *
+ * Each offloadable vertex v gets an arc from the source with its remote cost, which is cut
+ * when v is remote, and an arc to the sink with its local cost, which is cut when v is
+ * local. The edges between vertices are cut when they end up on different sides, so the cost of
+ * a cut is the cost of the partition. The maximum flow (Dinic's algorithm) gives us the minimum
+ * cut: the vertices we can't reach from the source in the residual graph are remote.
+ *
+ * The network is built in two passes: count the arcs of each vertex with countNode() and
+ * countEdge(), allocate() the arcs and then add them with addNode() and addEdge() in any order.
+ * The arrays with an entry per arc can live outside of the heap, see Buffers.
+ */
+class MaxFlow {
+	final int source, sink;
+	/** arcs leaving vertex v are first[v] to first[v + 1] - 1, next to each other in memory */
+	final int[] first;
+	/** target of each arc and the arc going the opposite way */
+	IntBuffer to, reverse;
+	FloatBuffer capacity;
+	DoubleBuffer residual;
+	/** cost which any partition pays, e.g. min(local, remote) of each vertex */
+	double base;
+	/** flow we've pushed so far */
+	double flow;
+
+	/** distance of each vertex from the source in the residual graph or -1 */
+	final int[] level;
+	/** next arc to look at for each vertex in the current phase, its number of arcs before that */
+	final int[] current;
+	/** arcs on the path we're growing from the source */
+	final int[] path;
+	final int[] queue;
+
+	/** the Offload we solve for, which tells us when to stop and gets our statistics, or null */
+	Offload offload;
+
+	/**
+	 * @param vertices the number of vertices without the sink, which comes after them
+	 * @param source the vertex which is always local
+	 */
+	MaxFlow(int vertices, int source) {
+		int size = vertices + 1;
+		this.source = source;
+		this.sink = vertices;
+		this.first = new int[size + 1];
+		this.level = new int[size];
+		this.current = new int[size];
+		this.path = new int[size];
+		this.queue = new int[size];
+	}
+
+	/**
+	 * Solve for the graph as the Offload has it once the unoffloadable nodes are merged into the
+	 * start node, which is the source.
+	 *
+	 * @param remote set to which we add the input nodes on the remote side of the cut
+	 * @return the cost of the partition
+	 */
+	static float solve(Offload offload, BitSet remote) {
+		SparseGraph m = offload.m;
+		Offload.InternalNode[] nodes = offload.nodes;
+		MaxFlow flow = new MaxFlow(nodes.length, offload.startNode.id);
+		flow.offload = offload;
+
+		for (int v = 0; v < nodes.length; v++) {
+			if (v != flow.source && offload.isActive(v))
+				flow.countNode(v, nodes[v].localCost, nodes[v].remoteCost);
+			for (int k = 0; k < m.degree[v]; k++) {
+				if (m.targets[v][k] > v)
+					flow.countEdge(v, m.targets[v][k]);
+			}
+		}
+		flow.allocate(Buffers.HEAP);
+
+		flow.base = offload.startNode.localCost;
+		for (int v = 0; v < nodes.length; v++) {
+			if (v != flow.source && offload.isActive(v))
+				flow.addNode(v, nodes[v].localCost, nodes[v].remoteCost);
+			for (int k = 0; k < m.degree[v]; k++) {
+				if (m.targets[v][k] > v)
+					flow.addEdge(v, m.targets[v][k], m.costs[v][k]);
+			}
+		}
+
+		float cost = (float) flow.run();
+		for (int v = 0; v < nodes.length; v++) {
+			if (flow.isRemote(v) && offload.isActive(v))
+				offload.setMembers(remote, v);
+		}
+
+		return cost;
+	}
+
+	void countNode(int v, float localCost, float remoteCost) {
+		if (localCost != remoteCost) {
+			this.current[v]++;
+			this.current[remoteCost > localCost ? this.source : this.sink]++;
+		}
+	}
+
+	/**
+	 * Count the arc which keeps an unoffloadable vertex on the local side
+	 */
+	void countPinned(int v) {
+		this.current[v]++;
+		this.current[this.source]++;
+	}
+
+	void countEdge(int u, int v) {
+		this.current[u]++;
+		this.current[v]++;
+	}
+
+	/**
+	 * Allocate the arcs we counted so far
+	 */
+	void allocate(Buffers buffers) {
+		int[] count = this.current;
+		for (int v = 0; v < count.length; v++) {
+			if (this.first[v] + (long) count[v] > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("too many edges");
+
+			this.first[v + 1] = this.first[v] + count[v];
+			count[v] = this.first[v];
+		}
+
+		int arcs = this.first[count.length];
+		this.to = buffers.ints(arcs);
+		this.reverse = buffers.ints(arcs);
+		this.capacity = buffers.floats(arcs);
+		this.residual = buffers.doubles(arcs);
+	}
+
+	void addNode(int v, float localCost, float remoteCost) {
+		// whichever side v ends up on costs at least the cheaper of the two
+		float min = Math.min(localCost, remoteCost);
+		this.base += min;
+		if (remoteCost > min)
+			addArc(this.source, v, remoteCost - min, 0);
+		else if (localCost > min)
+			addArc(v, this.sink, localCost - min, 0);
+	}
+
+	/**
+	 * Keep an unoffloadable vertex on the local side
+	 */
+	void addPinned(int v, float localCost) {
+		this.base += localCost;
+		addArc(this.source, v, Float.POSITIVE_INFINITY, 0);
+	}
+
+	void addEdge(int u, int v, float cost) {
+		if (cost < 0)
+			throw new IllegalArgumentException("negative transmission cost between " + u + " and " + v);
+
+		addArc(u, v, cost, cost);
+	}
+
+	/**
+	 * Add an arc from u to v and the one back
+	 */
+	void addArc(int u, int v, float forward, float backward) {
+		// current holds the next free slot of each vertex while we build
+		int e = this.current[u]++, r = this.current[v]++;
+		this.to.put(e, v);
+		this.reverse.put(e, r);
+		this.capacity.put(e, forward);
+		this.residual.put(e, forward);
+
+		this.to.put(r, u);
+		this.reverse.put(r, e);
+		this.capacity.put(r, backward);
+		this.residual.put(r, backward);
+	}
+
+	/**
+	 * Run until the flow is maximal or the Offload tells us to stop
+	 *
+	 * @return the cost of the partition
+	 */
+	double run() {
+		while (findLevels()) {
+			if (this.offload != null && this.offload.shouldStop())
+				break;
+
+			blockingFlow();
+
+			if (this.offload != null) {
+				OptimizationStats stats = this.offload.stats;
+				stats.phases++;
+				if (this.offload.listener != null)
+					this.offload.listener.phaseCompleted(stats.phases, (float) (this.base + this.flow));
+			}
+		}
+
+		// The last search left level -1 on the remote side. Unless we stopped early, it didn't
+		// reach the sink either. If it did, the vertices it reached still make a partition, it's
+		// just not the cheapest one.
+		double cost = this.base;
+		for (int u = 0; u < this.sink; u++) {
+			if (isRemote(u))
+				continue;
+
+			for (int e = this.first[u]; e < this.first[u + 1]; e++) {
+				if (isRemote(this.to.get(e)))
+					cost += this.capacity.get(e);
+			}
+		}
+
+		return cost;
+	}
+
+	/**
+	 * @return whether the vertex is on the remote side of the cut, once we've run
+	 */
+	boolean isRemote(int v) {
+		return v == this.sink || this.level[v] < 0;
+	}
+
+	/**
+	 * Breadth-first search from the source over the arcs with some capacity left
+	 *
+	 * @return whether we reached the sink
+	 */
+	boolean findLevels() {
+		Arrays.fill(this.level, -1);
+		int first = 0, last = 0;
+		this.queue[last++] = this.source;
+		this.level[this.source] = 0;
+		while (first < last) {
+			int u = this.queue[first++];
+			for (int e = this.first[u]; e < this.first[u + 1]; e++) {
+				int v = this.to.get(e);
+				if (this.level[v] < 0 && this.residual.get(e) > 0) {
+					this.level[v] = this.level[u] + 1;
+					this.queue[last++] = v;
+				}
+			}
+		}
+
+		return this.level[this.sink] >= 0;
+	}
+
+	/**
+	 * Push flow along shortest paths from the source to the sink until there are none left at
+	 * the current levels. Vertices from which the sink can't be reached are taken out of the
+	 * phase.
+	 */
+	void blockingFlow() {
+		System.arraycopy(this.first, 0, this.current, 0, this.current.length);
+		int u = this.source;
+		int depth = 0;
+		while (true) {
+			if (u == this.sink) {
+				double flow = Double.POSITIVE_INFINITY;
+				int bottleneck = 0;
+				for (int k = 0; k < depth; k++) {
+					double residual = this.residual.get(this.path[k]);
+					if (residual < flow) {
+						flow = residual;
+						bottleneck = k;
+					}
+				}
+				for (int k = 0; k < depth; k++) {
+					int e = this.path[k], r = this.reverse.get(e);
+					this.residual.put(e, this.residual.get(e) - flow);
+					this.residual.put(r, this.residual.get(r) + flow);
+				}
+				this.flow += flow;
+
+				// the path up to the first arc we used up still has capacity left
+				depth = bottleneck;
+				u = this.to.get(this.reverse.get(this.path[bottleneck]));
+				continue;
+			}
+
+			int e = this.current[u], end = this.first[u + 1];
+			while (e < end && (this.residual.get(e) <= 0 || this.level[this.to.get(e)] != this.level[u] + 1)) {
+				e++;
+			}
+			this.current[u] = e;
+
+			if (e < end) {
+				this.path[depth++] = e;
+				u = this.to.get(e);
+				continue;
+			}
+
+			// dead end, go back one step and try the next arc from there
+			if (u == this.source)
+				return;
+			this.level[u] = -2;
+			u = this.to.get(this.reverse.get(this.path[--depth]));
+			this.current[u]++;
+		}
+	}
+}
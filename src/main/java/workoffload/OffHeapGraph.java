@@ -0,0 +1,186 @@
+package workoffload;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.BitSet;
+
+/**
+ * Graph whose nodes and edges are kept outside of the heap, in direct buffers or memory-mapped
+ * files, for graphs too large to hold as Offload.Node objects.
+ *
+ * Nodes are identified by their index. Their costs can be set and edges added or changed in
+ * place at any time; optimize() finds the cheapest partition with the max-flow solver, whose
+ * arrays with an entry per edge are kept in the same kind of storage. Only a few arrays with an
+ * entry per node stay on the heap. Edges between the same nodes add up.
+ */
+public class OffHeapGraph {
+	final int size;
+	final int capacity;
+	final Buffers buffers;
+	final FloatBuffer localCosts, remoteCosts;
+	/** 0 for offloadable nodes, so that's what they start as, and 1 for the others */
+	final ByteBuffer offloadable;
+	final IntBuffer edgeSource, edgeTarget;
+	final FloatBuffer edgeCosts;
+	int edgeCount;
+
+	OffHeapGraph(int size, int capacity, Buffers buffers) {
+		this(size, capacity, 0, buffers, buffers.floats(size), buffers.floats(size), buffers.bytes(size),
+				buffers.ints(capacity), buffers.ints(capacity), buffers.floats(capacity));
+	}
+
+	/**
+	 * Create a graph on top of existing buffers, which already hold 'edgeCount' edges
+	 *
+	 * @param buffers where to put the arrays the solver needs
+	 */
+	OffHeapGraph(int size, int capacity, int edgeCount, Buffers buffers, FloatBuffer localCosts, FloatBuffer remoteCosts,
+			ByteBuffer offloadable, IntBuffer edgeSource, IntBuffer edgeTarget, FloatBuffer edgeCosts) {
+		this.size = size;
+		this.capacity = capacity;
+		this.edgeCount = edgeCount;
+		this.buffers = buffers;
+		this.localCosts = localCosts;
+		this.remoteCosts = remoteCosts;
+		this.offloadable = offloadable;
+		this.edgeSource = edgeSource;
+		this.edgeTarget = edgeTarget;
+		this.edgeCosts = edgeCosts;
+	}
+
+	/**
+	 * Create a graph in direct buffers
+	 *
+	 * @param size the number of nodes
+	 * @param capacity the largest number of edges we'll add
+	 */
+	public static OffHeapGraph allocate(int size, int capacity) {
+		return new OffHeapGraph(size, capacity, Buffers.DIRECT);
+	}
+
+	/**
+	 * Create a graph in memory-mapped files in the given directory, which don't need to fit in
+	 * memory. The files are deleted straight away and disappear once the graph is garbage
+	 * collected.
+	 *
+	 * @param size the number of nodes
+	 * @param capacity the largest number of edges we'll add
+	 */
+	public static OffHeapGraph map(File directory, int size, int capacity) {
+		return new OffHeapGraph(size, capacity, Buffers.mapped(directory));
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int edgeCount() {
+		return this.edgeCount;
+	}
+
+	/**
+	 * Set the costs of a node. Nodes are offloadable and without any cost until this is called.
+	 */
+	public void setNode(int v, float localCost, float remoteCost, boolean offloadable) {
+		this.localCosts.put(v, localCost);
+		this.remoteCosts.put(v, remoteCost);
+		this.offloadable.put(v, (byte) (offloadable ? 0 : 1));
+	}
+
+	public float localCost(int v) {
+		return this.localCosts.get(v);
+	}
+
+	public float remoteCost(int v) {
+		return this.remoteCosts.get(v);
+	}
+
+	public boolean isOffloadable(int v) {
+		return this.offloadable.get(v) == 0;
+	}
+
+	/**
+	 * Add an edge between two nodes
+	 *
+	 * @return the index of the edge, to change its cost with setEdgeCost()
+	 */
+	public int addEdge(int u, int v, float cost) {
+		if (this.edgeCount == this.capacity)
+			throw new IllegalStateException("the graph can't hold more than " + this.capacity + " edges");
+		if (u < 0 || u >= this.size || v < 0 || v >= this.size)
+			throw new IndexOutOfBoundsException("no node " + (u < 0 || u >= this.size ? u : v));
+
+		int e = this.edgeCount++;
+		this.edgeSource.put(e, u);
+		this.edgeTarget.put(e, v);
+		this.edgeCosts.put(e, cost);
+		return e;
+	}
+
+	public void setEdgeCost(int e, float cost) {
+		this.edgeCosts.put(e, cost);
+	}
+
+	public float edgeCost(int e) {
+		return this.edgeCosts.get(e);
+	}
+
+	/**
+	 * Find the cheapest partition for a cost model. The model's setNodes() gets a single node
+	 * standing for the whole graph, with the sums of the local and remote costs.
+	 *
+	 * @param remote set to which we add the indices of the nodes computed remotely
+	 * @return the cost of the partition
+	 */
+	public float optimize(CostModel model, BitSet remote) {
+		double localSum = 0, remoteSum = 0;
+		for (int v = 0; v < this.size; v++) {
+			localSum += this.localCosts.get(v);
+			remoteSum += this.remoteCosts.get(v);
+		}
+		model.setNodes(new Offload.Node[] { new Offload.Node((float) localSum, (float) remoteSum, true) });
+
+		// the source stands for the unoffloadable nodes, which all stay local
+		MaxFlow flow = new MaxFlow(this.size + 1, this.size);
+		for (int pass = 0; pass < 2; pass++) {
+			for (int v = 0; v < this.size; v++) {
+				float localCost = model.localCost(this.localCosts.get(v));
+				float remoteCost = model.remoteCost(this.remoteCosts.get(v));
+				if (!isOffloadable(v)) {
+					if (pass == 0)
+						flow.countPinned(v);
+					else
+						flow.addPinned(v, localCost);
+				} else if (pass == 0) {
+					flow.countNode(v, localCost, remoteCost);
+				} else {
+					flow.addNode(v, localCost, remoteCost);
+				}
+			}
+
+			for (int e = 0; e < this.edgeCount; e++) {
+				int u = this.edgeSource.get(e), v = this.edgeTarget.get(e);
+				if (u == v)
+					continue;
+
+				if (pass == 0)
+					flow.countEdge(u, v);
+				else
+					flow.addEdge(u, v, model.transmissionCost(this.edgeCosts.get(e)));
+			}
+
+			if (pass == 0)
+				flow.allocate(this.buffers);
+		}
+
+		float cost = (float) flow.run();
+		for (int v = 0; v < this.size; v++) {
+			if (flow.isRemote(v))
+				remote.set(v);
+		}
+
+		return cost;
+	}
+}
@@ -1,6 +1,13 @@
 package workoffload;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of the Optimal Offloading Partitioning Algorithm (MCOP algorithm by Huaming Wu, Katinka Wolter)
@@ -8,6 +15,20 @@ import java.util.*;
  */
 
 public class Offload {
+	/** default number of active vertices (or neighbours when merging) from which we work in parallel */
+	static final int PARALLEL_THRESHOLD = 2048;
+	/** number of vertices each task looks at when working in parallel */
+	static final int PARALLEL_CHUNK = 512;
+	/**
+	 * the parallel phases scan every vertex for each one they add, which only pays off over the
+	 * heap with at least (active vertices)^2 / PARALLEL_DENSITY edges
+	 */
+	static final int PARALLEL_DENSITY = 64;
+	/** number of keys a BucketQueue can always have, and the most it can have */
+	static final int MIN_BUCKETS = 1 << 16, MAX_BUCKETS = 1 << 24;
+	/** up to here floats hold every whole number exactly */
+	static final int MAX_EXACT = 1 << 24;
+
 	static public class Node {
 		public final float localCost;
 		public final float remoteCost;
@@ -34,6 +55,10 @@ public class Offload {
 		 * @param offloadable whether this node can be offloaded
 		 */
 		public Node(int local, int remote, boolean offloadable) {
+			this((float) local, (float) remote, offloadable);
+		}
+
+		Node(float local, float remote, boolean offloadable) {
 			this.localCost = local;
 			this.remoteCost = remote;
 			this.offloadable = offloadable;
@@ -88,57 +113,38 @@ public class Offload {
 			this.offloadable = parent.offloadable;
 			this.parent = parent;
 		}
-
-		public InternalNode(InternalNode n) {
-			this.id = n.id;
-			this.localCost = n.localCost;
-			this.remoteCost = n.remoteCost;
-			this.offloadable = n.parent.offloadable;//InternalNodes may be merged during algorithm
-			this.parent = n.parent;
-
-		}
 	}
 	
-	/** a cut is a partitioning of a graph into 2 set of nodes: local calculated (A) and remote calculated (nodes-A) */
+	/**
+	 * a cut is a partitioning of a graph into 2 set of nodes: local calculated (A) and remote calculated (t).
+	 * Each phase fills in the same Cut, as we only keep what we need of the cheapest one.
+	 */
 	static class Cut {
 		/** second to last vertex added to A */
-		public final int s;
+		int s;
 		/** last vertex added to A */
-		public final int t;
-		/** growing set of nodes, see algorithm paper */
-		public final Set<InternalNode> A;
-		/** all nodes as InternalNodes */
-		public final InternalNode[] nodes;
-		/** edge matric with communication costs (similar to m) */
-		public final float[][] graph;
+		int t;
 		/** calculated weight of this cut () */
-		public final float weight;
+		float weight;
 
-		public Cut(Set<InternalNode> A, float[][] graph, float[][] origGraph, InternalNode[] nodes, int s, int t) {
-			this.A = A;
-			this.graph = graph;
-			this.nodes = nodes;
+		void set(SparseGraph m, InternalNode[] nodes, float localCost, int s, int t) {
 			this.s = s;
 			this.t = t;
-			this.weight = calculateWeight(origGraph);
+			this.weight = calculateWeight(m, nodes, localCost);
 		}
 		
 		/** sum=all localcosts-(t.localCost-t.remoteCost)+communication costs of edges t->graph\{t} */
-		float calculateWeight(float[][] m) {
+		float calculateWeight(SparseGraph m, InternalNode[] nodes, float localCost) {
 			float sum = 0;
 
-			// The zeroth node contains the sum of all local and remote costs for this cut, so we can simply
-			// read from it and then substract the difference between local and remote for 't', which is the
+			// The phase accumulated the sum of all local costs as it grew A, so we can simply
+			// start from it and then substract the difference between local and remote for 't', which is the
 			// one we want to merge in the main graph.
-			sum += this.nodes[0].localCost;
-			sum -= this.nodes[t].localCost - this.nodes[t].remoteCost;
+			sum += localCost;
+			sum -= nodes[t].localCost - nodes[t].remoteCost;
 
 			// Then we add the cost for each connection which exists on the original graph
-			for (int i = 0; i < m.length; i++) {
-				float cost = m[t][i];
-				if (cost >= 0)//-1 means no connection
-					sum += cost;
-			}
+			sum += m.weightedDegree(t);
 			return sum;
 		}
 	}	
@@ -149,6 +155,13 @@ public class Offload {
 		/** set of nodes which should be calculated remotely */
 		Set<Node> remote;
 
+		/** the input nodes, in the order given to Offload */
+		final Node[] nodes;
+		/** positions of the nodes which should be calculated remotely, which only the reuse mode changes */
+		final BitSet partition;
+		/** position of each node, once a set was asked whether it contains one */
+		volatile Map<Node, Integer> positions;
+
 		/** cost of performing all computation locally */
 		float originalCost;
 		/** cost when using the local/remote partitioning of this object */
@@ -158,32 +171,391 @@ public class Offload {
 		 * savings = 1 - (result.cost / result.originalCost) */
 		float savings;
 
+		/** how the optimization went, e.g. how long it took */
+		OptimizationStats stats;
+
+		/**
+		 * whether the optimization was stopped by its deadline or an interrupt, in which case this
+		 * is the best partition found until then and likely not the best one there is
+		 */
+		boolean partial;
+
 		public Result() {
-			this.local = new HashSet<Node>();
-			this.remote = new HashSet<Node>();
+			this(new Node[0], new BitSet());
+		}
+
+		/**
+		 * The local and remote sets are views of the partition, they don't copy it.
+		 */
+		Result(Node[] nodes, BitSet partition) {
+			this.nodes = nodes;
+			this.partition = partition;
+			this.local = new Side(false);
+			this.remote = new Side(true);
+		}
+
+		/**
+		 * @return whether the node at this position in the input should be calculated remotely
+		 */
+		public boolean isRemote(int index) {
+			if (index < 0 || index >= this.nodes.length)
+				throw new IndexOutOfBoundsException("no node " + index);
+
+			return this.partition.get(index);
+		}
+
+		/**
+		 * @return a result with the same partition and costs which doesn't change when this one
+		 *         does, e.g. in the reuse mode
+		 */
+		Result copy() {
+			Result copy = new Result(this.nodes, (BitSet) this.partition.clone());
+			copy.positions = this.positions;
+			copy.originalCost = this.originalCost;
+			copy.cost = this.cost;
+			copy.savings = this.savings;
+			copy.partial = this.partial;
+			if (this.stats != null)
+				copy.stats = this.stats.copy();
+			return copy;
+		}
+
+		int indexOf(Object o) {
+			Map<Node, Integer> positions = this.positions;
+			if (positions == null) {
+				positions = new HashMap<Node, Integer>(2 * this.nodes.length);
+				for (int i = 0; i < this.nodes.length; i++) {
+					positions.put(this.nodes[i], i);
+				}
+				this.positions = positions;
+			}
+
+			Integer i = positions.get(o);
+			return i == null ? -1 : i;
+		}
+
+		/** The nodes on one side of the partition, as a read-only set */
+		class Side extends AbstractSet<Node> {
+			final boolean remote;
+
+			Side(boolean remote) {
+				this.remote = remote;
+			}
+
+			@Override
+			public int size() {
+				// not kept, as the reuse mode changes the partition
+				int remoteCount = partition.cardinality();
+				return this.remote ? remoteCount : nodes.length - remoteCount;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				int i = indexOf(o);
+				return i >= 0 && partition.get(i) == this.remote;
+			}
+
+			@Override
+			public Iterator<Node> iterator() {
+				return new Iterator<Node>() {
+					int next = find(0);
+
+					int find(int from) {
+						int i = remote ? partition.nextSetBit(from) : partition.nextClearBit(from);
+						return i >= 0 && i < nodes.length ? i : nodes.length;
+					}
+
+					public boolean hasNext() {
+						return this.next < nodes.length;
+					}
+
+					public Node next() {
+						if (this.next >= nodes.length)
+							throw new NoSuchElementException();
+
+						Node n = nodes[this.next];
+						this.next = find(this.next + 1);
+						return n;
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
 		}
 	}	
 
 	/** algorithm needs an arbitrary startNode, we always take the first which is unoffloadable */
 	InternalNode startNode;
-	/** edge matrix with communication costs; symmetric (only undirected edges) */
-	float[][] m;
+	/** graph with communication costs; symmetric (only undirected edges) */
+	SparseGraph m;
 	/** set of all nodes */
 	InternalNode[] nodes;
 	// User nodes
 	final Node userNodes[];
 	/**
-	 * We keep track of the number of active nodes as we remove merged nodes from the edge matrix
-	 * but keep the corresponding rows and columns. This extra book-keeping lets minCutPhase() know
+	 * We keep track of the number of active nodes as we merge nodes in the graph but keep their
+	 * indices. This extra book-keeping lets minCutPhase() know
 	 * how many nodes there are left which it needs in order to know when it has consumed all the
 	 * nodes.
 	 */
 	int activeNodes;
+	/** candidates for the most tightly connected vertex in minCutPhase() */
+	IndexedMaxHeap queue;
+	/** sum of the costs of the edges between each vertex and A during minCutPhase() */
+	float[] connectivity;
+	/** growing set of nodes in minCutPhase(), see algorithm paper */
+	BitSet A;
+	/** the cut of the last phase */
+	Cut cut;
+	/** input nodes on the remote side of the cheapest cut findCut() has seen so far */
+	BitSet minRemote;
+	/**
+	 * The input nodes each vertex is made of, as a linked list through the indices. A vertex's
+	 * list starts with itself and ends at lastMember[i], nextMember is -1 at the end.
+	 */
+	int[] nextMember, lastMember;
+	/** vertices which have been merged into others or removed from the graph */
+	BitSet inactive;
+	/** whether to shrink the graph before looking for the cut, see setReductions() */
+	boolean reduce;
+	/** whether to find the cut of independent parts of the graph separately, see setComponents() */
+	boolean components;
+	/** algorithm which decides the partition, see setSolver() */
+	Solver solver = Solvers.mcop();
+	/** gets told about each phase, see setListener() */
+	OptimizationListener listener;
+	/** statistics of the optimization we're running */
+	OptimizationStats stats;
+	/** whether the optimization we're running has a deadline and when it is (System.nanoTime()) */
+	boolean bounded;
+	long deadline;
+	/** whether the optimization we're running was stopped before it was done */
+	boolean stopped;
+
+	/** whether to reuse the last result when the input changes allow it, see setIncremental() */
+	boolean incremental;
+	/** whether to keep the working state and the result for the next optimization, see setReuse() */
+	boolean reuse;
+	/** the result we update in the reuse mode */
+	Result reusedResult;
+	/** costs of the input edges after applying the cost model */
+	float[] transmissionCosts;
+	/** graph as compiled from the input, before we start merging vertices in m */
+	SparseGraph compiled;
+	/** number of times we compiled the input, so others can tell when the graph changed */
+	int version;
+	/** local and remote cost of each node, after applying the cost model */
+	float[] localCosts, remoteCosts;
+	/** input edges in the order in which we compiled them, along with the nodes they connect */
+	Edge[] edges;
+	int[] edgeSource, edgeTarget;
+	/** cost of each input edge when we last compiled it, before applying the cost model */
+	float[] edgeCosts;
+	/** number of edges each input node had when we compiled the graph */
+	int[] edgeCounts;
+	/**
+	 * Where each input edge is in the compiled graph: its position in the list of its source and
+	 * in the list of its target, two entries per edge
+	 */
+	int[] edgeSlots;
+	/** whether there is more than one input edge between some pair of nodes */
+	boolean duplicateEdges;
+	/** the cost model, result and remote set of the last call to optimize() */
+	CostModel lastModel;
+	Result lastResult;
+	BitSet lastRemote;
+	/** whether to use the bucket queue when the costs are whole numbers, see setIntegerCosts() */
+	boolean integerCosts;
+	/** whether the costs the solver gets are whole numbers, see hasIntegerWeights() */
+	boolean integerWeights;
+	/** queue for the phases when the costs are whole numbers in a small enough range, or null */
+	BucketQueue buckets;
+	/** the last such queue, which the reuse mode keeps for the next optimization */
+	BucketQueue spareBuckets;
+	/** sum of the costs of the edges between each vertex and A when we use buckets */
+	long[] integerConnectivity;
+	/** pool to spread the work over for large graphs, see setParallel() */
+	ForkJoinPool pool;
+	/** size from which we use the pool */
+	int parallelThreshold = PARALLEL_THRESHOLD;
+	/** how dense the graph must be for the parallel phases, see PARALLEL_DENSITY */
+	int parallelDensity = PARALLEL_DENSITY;
 
 	public Offload(Node... nodes) {
 		this.userNodes = nodes;
 	}
 
+	/**
+	 * Create an Offload for nodes without any edges yet, and give them the edges between the
+	 * nodes at the same positions of the arrays. This compiles the graph as we go, without
+	 * looking for existing edges or mapping the nodes to their positions.
+	 *
+	 * There must not be any edges from a node to itself.
+	 */
+	Offload(Node[] nodes, int[] edgeSource, int[] edgeTarget, float[] edgeCosts) {
+		this.userNodes = nodes;
+		allocate();
+
+		int count = edgeSource.length;
+		this.edges = new Edge[count];
+		this.edgeSource = edgeSource;
+		this.edgeTarget = edgeTarget;
+		this.edgeCosts = new float[count];
+		this.edgeCounts = new int[nodes.length];
+		for (int k = 0; k < count; k++) {
+			Edge e = new Edge(nodes[edgeTarget[k]], edgeCosts[k]);
+			nodes[edgeSource[k]].edges.add(e);
+			this.edges[k] = e;
+			this.edgeCounts[edgeSource[k]]++;
+		}
+		layout();
+	}
+
+	/**
+	 * Create an Offload which shares the compiled input with 'other' but has its own costs and
+	 * working state, so both can optimize at the same time.
+	 */
+	Offload(Offload other) {
+		this.userNodes = other.userNodes;
+		this.version = other.version;
+		this.edges = other.edges;
+		this.edgeSource = other.edgeSource;
+		this.edgeTarget = other.edgeTarget;
+		this.edgeCounts = other.edgeCounts;
+		this.edgeSlots = other.edgeSlots;
+		this.duplicateEdges = other.duplicateEdges;
+		this.compiled = SparseGraph.withEdgesOf(other.compiled);
+		this.edgeCosts = new float[other.edges.length];
+		this.pool = other.pool;
+		this.parallelThreshold = other.parallelThreshold;
+		this.parallelDensity = other.parallelDensity;
+		this.reduce = other.reduce;
+		this.components = other.components;
+		this.solver = other.solver;
+		this.integerCosts = other.integerCosts;
+		this.listener = other.listener;
+		allocate();
+	}
+
+	/**
+	 * Reuse the work from the previous optimization when possible.
+	 *
+	 * With this enabled, the graph is only compiled again if edges were added. When only the costs
+	 * of existing edges changed and optimize() is given the same cost model as before, the
+	 * previous partition is kept as long as no other partition can have become cheaper relative to
+	 * it, i.e. the edges between local and remote nodes did not get more expensive and the rest did
+	 * not get cheaper. Otherwise it runs the full algorithm on the already compiled graph.
+	 *
+	 * @param incremental whether to enable the incremental mode
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Keep the working state between optimizations instead of allocating it again, so optimizing
+	 * the same graph over and over, e.g. whenever the network changes, doesn't allocate anything
+	 * once the graph stopped growing. This avoids the garbage collector's pauses on devices where
+	 * those are noticeable. The compiled graph keeps its lists of neighbours until edges are added,
+	 * and a cost model only overwrites the costs in them.
+	 *
+	 * The Result is kept too: each call returns the same object with the new partition and costs,
+	 * so a result is only valid until the next call. This covers the default solver without
+	 * reductions, components or a pool, which still allocate their own working state.
+	 *
+	 * @param reuse whether to enable the reuse mode
+	 */
+	public void setReuse(boolean reuse) {
+		this.reuse = reuse;
+		if (!reuse) {
+			this.reusedResult = null;
+			this.spareBuckets = null;
+		}
+	}
+
+	/**
+	 * Spread the work over the threads of a pool for large graphs.
+	 *
+	 * While a phase has enough active vertices left and the graph is dense enough, the most tightly
+	 * connected vertex is found by scanning all of them in parallel instead of keeping the
+	 * candidates in a heap, and merging a vertex with many neighbours updates those in parallel.
+	 * This pays off for large, dense graphs.
+	 * Below the threshold all the work happens in the calling thread, as it does by default.
+	 *
+	 * @param pool the pool to use, or null to do all the work in the calling thread
+	 */
+	public void setParallel(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Shrink the graph before looking for the cut.
+	 *
+	 * Nodes without edges, nodes with one or two neighbours and nodes which are never better off
+	 * remote are removed or merged into the start node in a way which keeps the cheapest
+	 * partition, and decided once the cut for the rest of the graph is known. This makes long
+	 * chains and trees much cheaper to optimize. As the algorithm does not always find the
+	 * cheapest partition, the partition it picks may be better or worse with this enabled.
+	 *
+	 * @param reduce whether to shrink the graph
+	 */
+	public void setReductions(boolean reduce) {
+		this.reduce = reduce;
+	}
+
+	/**
+	 * Optimize the parts of the graph which are only connected through unoffloadable nodes
+	 * separately.
+	 *
+	 * As unoffloadable nodes are always local, the best partition of each of these parts does
+	 * not depend on the others. Each one is optimized on its own, in parallel if a pool was given
+	 * to setParallel(), and stays local if that's cheaper than the best cut found for it.
+	 *
+	 * @param components whether to optimize each part separately
+	 */
+	public void setComponents(boolean components) {
+		this.components = components;
+	}
+
+	/**
+	 * Add the costs up exactly as longs and pick the next vertex of each MCOP phase from a bucket
+	 * per key instead of a heap, when the response time model gives whole-number costs (as the
+	 * Node constructors with int costs do) which add up to at most 2^24, so they're exact as
+	 * floats too, and whose keys span less than about the size of the graph, and at least 65536.
+	 *
+	 * This is faster, but vertices which are equally connected come out in another order than
+	 * with the heap. As MCOP doesn't always find the cheapest partition, it may pick a different
+	 * one.
+	 *
+	 * @param integerCosts whether to use buckets for whole-number costs
+	 */
+	public void setIntegerCosts(boolean integerCosts) {
+		this.integerCosts = integerCosts;
+	}
+
+	/**
+	 * Choose the algorithm which decides the partition, see Solvers. The default is
+	 * Solvers.mcop().
+	 */
+	public void setSolver(Solver solver) {
+		if (solver == null)
+			throw new IllegalArgumentException("solver must not be null");
+
+		this.solver = solver;
+	}
+
+	/**
+	 * Get told about the progress of each optimization, e.g. to give up on graphs which take too
+	 * many phases. The statistics of each optimization are in its Result either way.
+	 *
+	 * @param listener the listener or null for none
+	 */
+	public void setListener(OptimizationListener listener) {
+		this.listener = listener;
+	}
+
 	float sumLocalCost() {
 		float sum = 0;
 
@@ -195,36 +567,182 @@ public class Offload {
 	}
 
 	void internalizeNodes(CostModel model) {
+		ensureCompiled();
+		applyModel(model);
+		reset();
+	}
+
+	/**
+	 * Translate the input nodes and edges into indices and allocate what the algorithm needs for
+	 * a graph of this size.
+	 */
+	void compile() {
+		int size = userNodes.length;
+		this.version++;
+		allocate();
+		this.edgeCounts = new int[size];
+		Map<Node, Integer> mapping = new HashMap<Node, Integer>();// mapping between an object and our offset for it
+
+		int edgeCount = 0;
+		for (int i = 0; i < size; i++) {
+			Node n = userNodes[i];
+			mapping.put(n, i);
+			this.edgeCounts[i] = n.edges.size();
+			for (Edge e : n.edges) {
+				if (e.node != n)
+					edgeCount++;
+			}
+		}
+
+		this.edges = new Edge[edgeCount];
+		this.edgeSource = new int[edgeCount];
+		this.edgeTarget = new int[edgeCount];
+		this.edgeCosts = new float[edgeCount];
+
+		int k = 0;
+		for (int i = 0; i < size; i++) {
+			for (Edge e : userNodes[i].edges) {
+				// an edge to the node itself is never cut
+				if (e.node == userNodes[i])
+					continue;
+
+				this.edges[k] = e;
+				this.edgeSource[k] = i;
+				this.edgeTarget[k] = mapping.get(e.node);
+				k++;
+			}
+		}
+		layout();
+	}
+
+	/**
+	 * Build the compiled graph's lists of neighbours from the input edges, once per compilation,
+	 * so applying a cost model only has to fill in the costs.
+	 */
+	void layout() {
+		int count = this.edgeSource.length;
+		this.edgeSlots = new int[2 * count];
+		this.compiled = SparseGraph.fromEdges(userNodes.length, this.edgeSource, this.edgeTarget, this.edgeSlots);
+		this.duplicateEdges = this.compiled.edgeCount() < count;
+	}
+
+	/**
+	 * Set the cost of the compiled edge of an input edge, in both directions
+	 */
+	void setEdgeCost(int k, float cost) {
+		this.compiled.costs[this.edgeSource[k]][this.edgeSlots[2 * k]] = cost;
+		this.compiled.costs[this.edgeTarget[k]][this.edgeSlots[2 * k + 1]] = cost;
+	}
+
+	/**
+	 * Allocate the working state of the algorithm for a graph of this size.
+	 */
+	void allocate() {
+		int size = userNodes.length;
+		this.queue = new IndexedMaxHeap(size);
+		this.connectivity = new float[size];
+		this.A = new BitSet(size);
+		this.cut = new Cut();
+		this.minRemote = new BitSet(size);
+		this.nextMember = new int[size];
+		this.lastMember = new int[size];
+		this.nodes = new InternalNode[size];
+		this.inactive = new BitSet(size);
+	}
+
+	/**
+	 * Apply the cost model to the nodes and edges as they are in the input.
+	 */
+	void applyModel(CostModel model) {
+		for (int k = 0; k < this.edges.length; k++) {
+			this.edgeCosts[k] = this.edges[k].cost;
+		}
+		applyModel(model, this.edgeCosts);
+	}
+
+	/**
+	 * Apply the cost model to the nodes as they are in the input and to the given costs of the
+	 * input edges, in the order in which we compiled them.
+	 */
+	void applyModel(CostModel model, float[] edgeCosts) {
+		if (edgeCosts != this.edgeCosts)
+			System.arraycopy(edgeCosts, 0, this.edgeCosts, 0, this.edgeCosts.length);
+
 		model.setNodes(this.userNodes);
-		this.m = new float[userNodes.length][userNodes.length];
-		//filling m initially with -1 (no connection)
-		for (float[] arr : this.m) {
-			Arrays.fill(arr, -1f);
+		int size = userNodes.length;
+		if (!this.reuse || this.localCosts == null || this.localCosts.length != size) {
+			this.localCosts = new float[size];
+			this.remoteCosts = new float[size];
+		}
+		for (int i = 0; i < size; i++) {
+			this.localCosts[i] = userNodes[i].localCost;
+			this.remoteCosts[i] = userNodes[i].remoteCost;
+		}
+		CostModels.localCosts(model, this.localCosts, this.localCosts, size);
+		CostModels.remoteCosts(model, this.remoteCosts, this.remoteCosts, size);
+
+		int count = this.edges.length;
+		if (!this.reuse || this.transmissionCosts == null || this.transmissionCosts.length < count)
+			this.transmissionCosts = new float[count];
+		float[] costs = this.transmissionCosts;
+		CostModels.transmissionCosts(model, this.edgeCosts, costs, count);
+
+		// Each outgoing edge is a bidirectional edge in our graph for simpler access, laid out when
+		// we compiled it. If both nodes have an edge to each other, the last one wins.
+		if (!this.reuse)
+			this.compiled = SparseGraph.withEdgesOf(this.compiled);
+		for (int k = 0; k < count; k++) {
+			setEdgeCost(k, costs[k]);
+		}
+	}
+
+	/**
+	 * Set up the working graph and nodes from the compiled graph so we can start merging.
+	 */
+	void reset() {
+		if (this.reuse && this.m != null && this.m.size() == this.compiled.size()) {
+			this.m.retainRows = true;
+			this.m.copyFrom(this.compiled);
+		} else {
+			this.m = new SparseGraph(this.compiled);
+			this.m.retainRows = this.reuse;
 		}
-		this.nodes = new InternalNode[userNodes.length];
 		this.activeNodes = userNodes.length;
-		Map<Node, Integer> mapping = new HashMap<Node, Integer>();// mapping between an object and our offset for it
+		this.inactive.clear();
 
 		// Create the internal representation of the nodes, which we can modify as needed
 		// while keeping a reference to the unmodified input node.
 		for (int i = 0; i < userNodes.length; i++) {
-			Node n = userNodes[i];
-			mapping.put(n, i);
-			this.nodes[i] = new InternalNode(i, n);
-			this.nodes[i].localCost = model.localCost(this.nodes[i].localCost);
-			this.nodes[i].remoteCost = model.remoteCost(this.nodes[i].remoteCost);
+			if (!this.reuse || this.nodes[i] == null)
+				this.nodes[i] = new InternalNode(i, userNodes[i]);
+			this.nodes[i].localCost = this.localCosts[i];
+			this.nodes[i].remoteCost = this.remoteCosts[i];
+			this.nextMember[i] = -1;
+			this.lastMember[i] = i;
+		}
+	}
+
+	/**
+	 * Compile the input unless it's already compiled and no edges were added since. Compiling
+	 * again means the incremental mode can't use the last result.
+	 */
+	void ensureCompiled() {
+		if (this.edges == null || topologyChanged()) {
+			compile();
+			this.lastResult = null;
 		}
+	}
 
-		// Go through each outgoing edge and store it as a bidirectional edge in our
-		// edge matrix for simpler access.
-		for (Node n : userNodes) {
-			int i = mapping.get(n);
-			for (Edge e : n.edges) {
-				int j = mapping.get(e.node);
-				this.m[i][j] = model.transmissionCost(e.cost);
-				this.m[j][i] = model.transmissionCost(e.cost);
-			}
+	/**
+	 * @return whether edges have been added to the input nodes since we compiled them
+	 */
+	boolean topologyChanged() {
+		for (int i = 0; i < userNodes.length; i++) {
+			if (userNodes[i].edges.size() != this.edgeCounts[i])
+				return true;
 		}
+
+		return false;
 	}
 
 	/**
@@ -236,161 +754,926 @@ public class Offload {
 	 * the unmodified Nodes given as input.
 	 */	
 	public Result optimize(CostModel model) throws Exception {
-		internalizeNodes(model);
+		long start = System.nanoTime();
+		if (this.incremental && this.lastResult != null && !topologyChanged()) {
+			if (model == this.lastModel) {
+				Result result = reoptimize(model, start);
+				if (result != null)
+					return result;
+			} else {
+				applyModel(model);
+			}
+			reset();
+		} else {
+			internalizeNodes(model);
+		}
+
+		this.lastModel = model;
+		long prepared = System.nanoTime();
+		Result result = solve();
+		result.stats.prepareNanos = prepared - start;
+		result.stats.totalNanos += prepared - start;
+		// the incremental mode relies on the last partition being as good as we can get
+		if (result.partial) {
+			this.lastResult = null;
+			this.lastRemote = null;
+		} else {
+			this.lastResult = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Optimize the graph, giving up once the timeout expires or the calling thread is
+	 * interrupted. This is checked while merging the unoffloadable nodes, while shrinking the
+	 * graph (see setReductions()) and between the solver's phases, so it can run over by up to
+	 * one merge or phase. Compiling the graph and applying the cost model are not covered: they
+	 * take time linear in the size of the graph and always run to the end.
+	 *
+	 * If it gave up, the result has the cheapest partition found until then and is flagged as
+	 * partial. Without any partition found yet, everything stays local. An interrupt is left
+	 * set for the caller to see.
+	 */
+	public Result optimize(CostModel model, long timeout, TimeUnit unit) throws Exception {
+		this.deadline = System.nanoTime() + unit.toNanos(timeout);
+		this.bounded = true;
+		try {
+			return optimize(model);
+		} finally {
+			this.bounded = false;
+		}
+	}
+
+	/**
+	 * @return whether the optimization should stop now, because of the deadline or an interrupt.
+	 *         Only an optimization with a timeout stops early.
+	 */
+	boolean shouldStop() {
+		if (this.bounded && (Thread.currentThread().isInterrupted() || System.nanoTime() - this.deadline >= 0))
+			this.stopped = true;
+
+		return this.stopped;
+	}
+
+	/**
+	 * Optimize the graph for each of the given cost models, e.g. different weights between time and
+	 * energy or different network conditions.
+	 *
+	 * The input is compiled once and shared, while each model gets its own costs and working state.
+	 * If a pool was given to setParallel() the models are optimized in parallel on it, otherwise
+	 * one after the other. This does not affect the state used by the incremental mode.
+	 *
+	 * @return the Result for each model, in the same order as the models
+	 */
+	public List<Result> optimizeAll(List<? extends CostModel> models) throws Exception {
+		ensureCompiled();
+
+		List<Callable<Result>> tasks = new ArrayList<Callable<Result>>(models.size());
+		for (final CostModel model : models) {
+			final Offload worker = new Offload(this);
+			tasks.add(new Callable<Result>() {
+				public Result call() throws Exception {
+					long start = System.nanoTime();
+					worker.applyModel(model);
+					worker.reset();
+					worker.lastModel = model;
+					long prepared = System.nanoTime();
+					Result result = worker.solve();
+					result.stats.prepareNanos = prepared - start;
+					result.stats.totalNanos += prepared - start;
+					return result;
+				}
+			});
+		}
+
+		List<Result> results = new ArrayList<Result>(models.size());
+		if (this.pool == null) {
+			for (Callable<Result> task : tasks) {
+				results.add(task.call());
+			}
+			return results;
+		}
+
+		try {
+			for (Future<Result> future : this.pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+
+		return results;
+	}
+
+	/**
+	 * Bring the compiled graph up to date with the input's edge costs and check whether the last
+	 * partition is still the one to use.
+	 *
+	 * @param start when the optimization started (System.nanoTime()), for the statistics
+	 * @return the updated result or null if the full algorithm needs to run
+	 */
+	Result reoptimize(CostModel model, long start) {
+		boolean changed = false, keep = true;
+		for (int k = 0; k < this.edges.length; k++) {
+			float cost = this.edges[k].cost;
+			if (cost == this.edgeCosts[k])
+				continue;
+
+			changed = true;
+			this.edgeCosts[k] = cost;
+			int i = this.edgeSource[k], j = this.edgeTarget[k];
+			float newCost = model.transmissionCost(cost);
+			float delta = newCost - this.compiled.costs[i][this.edgeSlots[2 * k]];
+			setEdgeCost(k, newCost);
+
+			// Cheaper edges across the cut and more expensive ones inside either side
+			// can only make the last partition better compared to any other.
+			if (this.lastRemote.get(i) != this.lastRemote.get(j))
+				keep &= delta <= 0;
+			else
+				keep &= delta >= 0;
+		}
+
+		if (!changed)
+			return this.lastResult;
+
+		// The costs we just set might belong to edges which are overridden by another one between
+		// the same nodes, so set them all again in their original order.
+		if (this.duplicateEdges) {
+			for (int k = 0; k < this.edges.length; k++) {
+				setEdgeCost(k, model.transmissionCost(this.edgeCosts[k]));
+			}
+			return null;
+		}
+
+		if (!keep)
+			return null;
+
+		// in the reuse mode the last result holds lastRemote already
+		Result result = this.reuse ? this.lastResult : new Result(this.userNodes, this.lastRemote);
+		if (result.stats == null)
+			result.stats = new OptimizationStats();
+		else
+			result.stats.clear();
+		result.originalCost = this.lastResult.originalCost;
+		result.cost = partitionCost(this.lastRemote);
+		result.savings = 1 - (result.cost / result.originalCost);
+		result.stats.prepareNanos = result.stats.totalNanos = System.nanoTime() - start;
+		this.lastResult = result;
+
+		return result;
+	}
+
+	/**
+	 * @return the cost of computing the given nodes remotely and the rest locally
+	 */
+	float partitionCost(BitSet remote) {
+		return nodeCost(remote) + cutCost(remote);
+	}
 
-		Result result = new Result();
+	/**
+	 * @return the cost of the computation when the given nodes are computed remotely
+	 */
+	float nodeCost(BitSet remote) {
+		float sum = 0;
+		for (int i = 0; i < userNodes.length; i++) {
+			sum += remote.get(i) ? this.remoteCosts[i] : this.localCosts[i];
+		}
 
-		List<InternalNode> unoff = findUnoffloadable();
-		if (unoff.isEmpty())
+		return sum;
+	}
+
+	/**
+	 * @return the cost of the communication between the given remote nodes and the local ones
+	 */
+	float cutCost(BitSet remote) {
+		float sum = 0;
+		for (int i = 0; i < userNodes.length; i++) {
+			boolean isRemote = remote.get(i);
+			int[] targets = this.compiled.targets[i];
+			float[] costs = this.compiled.costs[i];
+			for (int k = 0; k < this.compiled.degree[i]; k++) {
+				int j = targets[k];
+				if (i < j && remote.get(j) != isRemote)
+					sum += costs[k];
+			}
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Run the algorithm on the graph as set up by reset()
+	 */
+	Result solve() throws Exception {
+		long start = System.nanoTime();
+		Result result = this.reuse ? this.reusedResult : null;
+		BitSet remote;
+		if (result != null) {
+			remote = result.partition;
+			remote.clear();
+			result.stats.clear();
+		} else {
+			remote = new BitSet(userNodes.length);
+			result = new Result(userNodes, remote);
+			result.stats = new OptimizationStats();
+			if (this.reuse)
+				this.reusedResult = result;
+		}
+		OptimizationStats stats = this.stats = result.stats;
+		this.stopped = false;
+
+		int first = firstUnoffloadable();
+		if (first < 0)
 			throw new Exception("no unoffloadable nodes");
 
-		startNode = unoff.get(0);
+		float originalCost = sumLocalCost();
+
+		startNode = this.nodes[first];
 		// All unoffloadable nodes are merged into a single one, as those can never be
 		// remote. We can save some processing by pretending they're a single one.
-		for (int j = 1; j < unoff.size(); j++) {
-			mergeVertices(m, startNode, unoff.get(j));
-			this.activeNodes--;
+		for (int i = first + 1; i < this.nodes.length && !shouldStop(); i++) {
+			if (!this.nodes[i].offloadable)
+				merge(startNode, this.nodes[i]);
+		}
+
+		Reductions reductions = null;
+		if (this.reduce && !this.stopped) {
+			reductions = new Reductions(this);
+			reductions.reduce();
+		}
+		long reduced = System.nanoTime();
+		stats.reduceNanos = reduced - start;
+		stats.vertices = this.activeNodes;
+		stats.edges = this.m.edgeCount();
+		this.integerWeights = this.integerCosts && this.lastModel instanceof CostModels.ResponseTime
+				&& hasIntegerWeights();
+
+		float cost;
+		if (this.stopped) {
+			// we gave up before looking for a cut, so everything stays local
+			cost = originalCost;
+		} else {
+			List<int[]> components = this.components ? findComponents() : null;
+			if (components != null && components.size() > 1)
+				cost = solveComponents(components, remote);
+			else
+				cost = this.solver.solve(this, remote);
+			if (reductions != null)
+				reductions.expand(remote);
 		}
+		stats.cutNanos = System.nanoTime() - reduced;
+		this.lastRemote = remote;
 
-		result.originalCost = sumLocalCost();
+		// Every node which is not part of t in the cut we decided was the optimal one
+		// is in the local set, including the unoffloadable ones.
+		result.partial = this.stopped;
+		result.originalCost = originalCost;
+		result.cost = cost;
+		result.savings = 1 - (result.cost / result.originalCost);
+		stats.totalNanos = System.nanoTime() - start;
+		return result;
+	}
 
-		Cut minCut = null, lastCut = null;
+	/**
+	 * Find the minimal cut by storing the one with the lowest cost. We stop iterating when
+	 * only the start node is left, which means that we've processed the whole graph.
+	 *
+	 * @param remote set to which we add the input nodes on the remote side of the cut
+	 * @return the cost of the cut
+	 */
+	float findCut(BitSet remote) {
+		boolean found = false;
+		float minWeight = 0;
+		this.buckets = this.integerWeights ? bucketQueue() : null;
 
-		// Find the minimal cut by storing the one with the lowest cost. We stop iterating when
-		// the new cut's set has a single entry, which means that we've processed the whole graph.
-		do {
-			lastCut = minCutPhase(model);
-			if (minCut == null || lastCut.weight < minCut.weight) {
-				minCut = lastCut;
+		while (this.activeNodes > 1 && !shouldStop()) {
+			Cut lastCut = minCutPhase(lastModel);
+			if (!found || lastCut.weight < minWeight) {
+				found = true;
+				minWeight = lastCut.weight;
+				// t may be merged with other nodes later on, so take its members now
+				this.minRemote.clear();
+				setMembers(this.minRemote, lastCut.t);
 			}
-			mergeVertices(this.m, this.nodes[lastCut.s], this.nodes[lastCut.t]);
-			this.activeNodes--;
-		} while (lastCut.A.size() > 1);
-		
-		// Seed the local node set from the unoffloadable list (which are
-		// by definition local)
-		for (InternalNode n : unoff) {
-			result.local.add(n.parent);
+			merge(this.nodes[lastCut.s], this.nodes[lastCut.t]);
+
+			this.stats.phases++;
+			if (this.listener != null)
+				this.listener.phaseCompleted(this.stats.phases, lastCut.weight);
 		}
-		// and then add those from the cut we decided was the optimal one.
-		for (InternalNode n : minCut.A) {
-			result.local.add(n.parent);
+
+		// Without any offloadable nodes left (or any cut yet) everything stays local
+		if (!found) {
+			float localCost = 0;
+			for (int i = 0; i < this.nodes.length; i++) {
+				if (isActive(i))
+					localCost += this.nodes[i].localCost;
+			}
+			return localCost;
 		}
 
-		result.cost = minCut.weight;
-		result.savings = 1 - (result.cost / result.originalCost);
+		remote.or(this.minRemote);
+		return minWeight;
+	}
 
-		// Every node which is not in the local set is automatically
-		// in the remote set.
-		for (InternalNode n : this.nodes) {
-			if (!result.local.contains(n.parent))
-				result.remote.add(n.parent);
+	/**
+	 * Split the active vertices other than the start node into the groups which are connected to
+	 * each other without going through the start node. As the start node is always local, the
+	 * partition of each group does not depend on the others.
+	 *
+	 * @return the vertices of each group
+	 */
+	List<int[]> findComponents() {
+		int size = this.nodes.length;
+		int start = this.startNode.id;
+		BitSet seen = new BitSet(size);
+		int[] queue = new int[size];
+		List<int[]> components = new ArrayList<int[]>();
+
+		for (int i = 0; i < size; i++) {
+			if (i == start || seen.get(i) || !isActive(i))
+				continue;
+
+			// breadth-first search which does not go through the start node
+			int head = 0, tail = 0;
+			queue[tail++] = i;
+			seen.set(i);
+			while (head < tail) {
+				int v = queue[head++];
+				for (int k = 0; k < this.m.degree[v]; k++) {
+					int u = this.m.targets[v][k];
+					if (u != start && !seen.get(u)) {
+						seen.set(u);
+						queue[tail++] = u;
+					}
+				}
+			}
+			components.add(Arrays.copyOf(queue, tail));
 		}
-		return result;
+
+		return components;
 	}
 
-	List<InternalNode> findUnoffloadable() {
-		List<InternalNode> lst = new ArrayList<InternalNode>();
-		for (InternalNode n : this.nodes) {
-			if (n.offloadable)
-				continue;
+	/**
+	 * Find the cut for each group of vertices on its own, with its own copy of the start node, and
+	 * put the results together. Each group stays local if that's cheaper than its cut.
+	 *
+	 * @param remote set to which we add the input nodes on the remote side of the cuts
+	 * @return the cost of the whole graph
+	 */
+	float solveComponents(List<int[]> components, BitSet remote) throws Exception {
+		List<Callable<BitSet>> tasks = new ArrayList<Callable<BitSet>>(components.size());
+		final float[] costs = new float[components.size()];
+		final Offload[] workers = new Offload[components.size()];
+		for (int c = 0; c < components.size(); c++) {
+			final int[] vertices = components.get(c);
+			final int index = c;
+			tasks.add(new Callable<BitSet>() {
+				public BitSet call() {
+					Offload worker = workers[index] = component(vertices);
+					BitSet remote = new BitSet(vertices.length + 1);
+					costs[index] = solver.solve(worker, remote);
+
+					float localCost = 0;
+					for (int v : vertices) {
+						localCost += nodes[v].localCost;
+					}
+					if (localCost <= costs[index]) {
+						costs[index] = localCost;
+						remote.clear();
+					}
+					return remote;
+				}
+			});
+		}
+
+		List<BitSet> remotes = new ArrayList<BitSet>(tasks.size());
+		if (this.pool == null) {
+			for (Callable<BitSet> task : tasks) {
+				remotes.add(task.call());
+			}
+		} else {
+			try {
+				for (Future<BitSet> future : this.pool.invokeAll(tasks)) {
+					remotes.add(future.get());
+				}
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception)
+					throw (Exception) e.getCause();
+				throw e;
+			}
+		}
+
+		float cost = this.startNode.localCost;
+		for (int c = 0; c < components.size(); c++) {
+			this.stats.phases += workers[c].stats.phases;
+			this.stopped |= workers[c].stopped;
+			this.stats.merges += workers[c].stats.merges;
+			int[] vertices = components.get(c);
+			BitSet componentRemote = remotes.get(c);
+			for (int i = componentRemote.nextSetBit(1); i >= 0; i = componentRemote.nextSetBit(i + 1)) {
+				setMembers(remote, vertices[i - 1]);
+			}
+			cost += costs[c];
+		}
+
+		return cost;
+	}
+
+	/**
+	 * Create the problem for a group of vertices, ready to look for the cut. Its vertex 0 is a
+	 * copy of the start node without any cost, followed by the vertices in the group.
+	 */
+	Offload component(int[] vertices) {
+		int size = vertices.length + 1;
+		int start = this.startNode.id;
+		int[] index = new int[this.nodes.length];
+		Node[] nodes = new Node[size];
+		nodes[0] = new Node(0, 0, false);
+		for (int i = 0; i < vertices.length; i++) {
+			index[vertices[i]] = i + 1;
+			nodes[i + 1] = new Node(0, 0);
+		}
+
+		Offload worker = new Offload(nodes);
+		worker.pool = this.pool;
+		worker.solver = this.solver;
+		worker.listener = this.listener;
+		worker.stats = new OptimizationStats();
+		worker.bounded = this.bounded;
+		worker.deadline = this.deadline;
+		worker.parallelThreshold = this.parallelThreshold;
+		worker.parallelDensity = this.parallelDensity;
+		worker.integerWeights = this.integerWeights;
+		worker.allocate();
+		worker.localCosts = new float[size];
+		worker.remoteCosts = new float[size];
+		worker.compiled = new SparseGraph(size);
+		for (int i = 0; i < vertices.length; i++) {
+			int v = vertices[i];
+			worker.localCosts[i + 1] = this.nodes[v].localCost;
+			worker.remoteCosts[i + 1] = this.nodes[v].remoteCost;
+			for (int k = 0; k < this.m.degree[v]; k++) {
+				int u = this.m.targets[v][k];
+				worker.compiled.setEdge(i + 1, u == start ? 0 : index[u], this.m.costs[v][k]);
+			}
+		}
+		worker.reset();
+		worker.startNode = worker.nodes[0];
+
+		return worker;
+	}
+
+	/**
+	 * Merge t into s in the main graph, keeping track of the input nodes which make up s.
+	 */
+	void merge(InternalNode s, InternalNode t) {
+		mergeVertices(this.m, s, t, this.pool, this.parallelThreshold);
+		this.nextMember[this.lastMember[s.id]] = t.id;
+		this.lastMember[s.id] = this.lastMember[t.id];
+		remove(t.id);
+		this.stats.merges++;
+	}
+
+	/**
+	 * Mark a vertex as no longer being part of the graph
+	 */
+	void remove(int v) {
+		this.inactive.set(v);
+		this.activeNodes--;
+	}
+
+	boolean isActive(int v) {
+		return !this.inactive.get(v);
+	}
 
-			lst.add(n);
+	/**
+	 * Add the input nodes which have been merged into the given vertex to a set
+	 */
+	void setMembers(BitSet set, int v) {
+		for (int i = v; i >= 0; i = this.nextMember[i]) {
+			set.set(i);
 		}
-		return lst;
+	}
+
+	/**
+	 * @return the id of the first unoffloadable node or -1 if there is none
+	 */
+	int firstUnoffloadable() {
+		for (int i = 0; i < this.nodes.length; i++) {
+			if (!this.nodes[i].offloadable)
+				return i;
+		}
+		return -1;
 	}
 
 	/**
 	 * Merge vertex t into vertex s, adding together their local, remote, and communication costs.
 	 *
-	 * @param graph the edge matrix for these nodes.
+	 * @param graph the graph for these nodes.
 	 * @param s the node to merge into.
 	 * @param t the node to merge into s.
 	 */
-	static void mergeVertices(float[][] graph, InternalNode s, InternalNode t) {
+	static void mergeVertices(SparseGraph graph, InternalNode s, InternalNode t) {
+		mergeVertices(graph, s, t, null, 0);
+	}
+
+	/**
+	 * Merge vertex t into vertex s, updating t's neighbours in parallel if there are at least
+	 * 'threshold' of them.
+	 */
+	static void mergeVertices(SparseGraph graph, InternalNode s, InternalNode t, ForkJoinPool pool, int threshold) {
 		//add up the computation costs
 		s.localCost += t.localCost;
 		s.remoteCost += t.remoteCost;
 
-		//disconnect the vertices to be merged
-		graph[s.id][t.id] = -1f;
-		graph[t.id][s.id] = -1f;
-
 		// Add t's edges to s and remove them from t. For edges with a common target
 		// we add up the costs.
-		float tRow[] = graph[t.id];
-		for (int i = 0; i < graph.length; i++) {
-			float tCost = tRow[i];
-			if (tCost == -1f)
+		graph.merge(s.id, t.id, pool, threshold);
+	}
+
+	/**
+	 * Grow A from the start node by adding the most tightly connected vertex until it contains every
+	 * active vertex.
+	 *
+	 * The main graph is only read here. Instead of merging each vertex into A we keep track of how
+	 * strongly every other vertex is connected to A, which is what merging them would tell us.
+	 */
+	Cut minCutPhase(CostModel model) {
+		if (this.buckets != null)
+			return bucketMinCutPhase();
+		if (parallelPhase())
+			return parallelMinCutPhase();
+
+		//keep track of which nodes we've already added
+		BitSet A = this.A;
+		A.clear();
+
+		// This is the node from which we grow A. Instead of merging the nodes into it, we keep
+		// the sum of all the local costs we've added so far.
+		int aIdx = this.startNode.id;
+		float localCost = this.nodes[aIdx].localCost;
+		int s = aIdx, t = aIdx;
+		int size = 1;
+
+		A.set(aIdx);
+		// The queue holds the neighbours of A keyed by their gain.
+		this.queue.clear();
+		updateGains(A, aIdx);
+
+		// while A =/= V_i (paper)
+		while (size < this.activeNodes) {
+			// The rest of the graph is not connected to A, so its connectivity is 0
+			if (this.queue.isEmpty())
+				enqueueUnconnected(A);
+
+			// while v \in V_i and v \not\in A (paper)
+			int vMaxIdx = this.queue.pop();
+
+			// vMaxIdx is the most tightly connected vertex to A
+			s = t;
+			t = vMaxIdx;
+			A.set(vMaxIdx);
+			size++;
+			localCost += this.nodes[vMaxIdx].localCost;
+			updateGains(A, vMaxIdx);
+		}
+
+		// return cut(A-t, t), s, t (paper)
+		this.cut.set(this.m, this.nodes, localCost, s, t);
+		return this.cut;
+	}
+
+	/**
+	 * Add every active vertex outside of A to the queue without any connection to A
+	 */
+	void enqueueUnconnected(BitSet A) {
+		for (int i = 0; i < this.nodes.length; i++) {
+			if (A.get(i) || !isActive(i))
 				continue;
-			
-			float sCost = graph[s.id][i];
-			float newCost;
-			if (sCost == -1f)
-				newCost = tCost;
+
+			InternalNode node = this.nodes[i];
+			this.connectivity[i] = 0;
+			this.queue.put(i, -(node.localCost - node.remoteCost));
+		}
+	}
+
+	/**
+	 * Update the gains of the neighbours of v as it gets added to A. Their connection to A
+	 * increases by the cost of their edge to v, while their local and remote costs stay the same.
+	 */
+	void updateGains(BitSet A, int v) {
+		int[] targets = this.m.targets[v];
+		float[] costs = this.m.costs[v];
+		for (int k = 0; k < this.m.degree[v]; k++) {
+			int i = targets[k];
+			if (A.get(i))
+				continue;
+
+			InternalNode node = this.nodes[i];
+			if (this.queue.contains(i))
+				this.connectivity[i] += costs[k];
 			else
-				newCost = sCost + tCost;
+				this.connectivity[i] = costs[k];
 
-			//set the new cost in the edge matrix
-			graph[s.id][i] = newCost;
-			graph[i][s.id] = newCost;
-			//remove the old edge
-			graph[t.id][i] = -1f;
-			graph[i][t.id] = -1f;
+			this.queue.put(i, this.connectivity[i] - (node.localCost - node.remoteCost));
 		}
 	}
 
-	Cut minCutPhase(CostModel model) {
-		//we need to make a copy of the graph, as we are going to merge nodes and
-		//we do not want those changes to appear on the main nodes
-		float[][] graph = new float[m.length][0];
-		for (int i = 0; i < m.length; i++) {
-			graph[i] = Arrays.copyOf(m[i], m[i].length);
+	/**
+	 * @return whether the costs of the graph are whole numbers, which the response time model
+	 *         leaves as they are for nodes created with int costs, and add up to at most
+	 *         MAX_EXACT. Every cost merging vertices and every cut can give is at most that
+	 *         total, so the floats we keep them in stay exact.
+	 */
+	boolean hasIntegerWeights() {
+		long total = 0;
+		for (int v = 0; v < this.nodes.length; v++) {
+			if (!isActive(v))
+				continue;
+
+			InternalNode node = this.nodes[v];
+			if (!isInteger(node.localCost) || !isInteger(node.remoteCost))
+				return false;
+			total += Math.abs((long) node.localCost) + Math.abs((long) node.remoteCost);
+
+			int[] targets = this.m.targets[v];
+			float[] costs = this.m.costs[v];
+			for (int k = 0; k < this.m.degree[v]; k++) {
+				if (!isInteger(costs[k]))
+					return false;
+				// each edge once
+				if (targets[k] > v)
+					total += Math.abs((long) costs[k]);
+			}
+		}
+
+		return total <= MAX_EXACT;
+	}
+
+	static boolean isInteger(float cost) {
+		return Math.abs(cost) <= MAX_EXACT && cost == Math.rint(cost);
+	}
+
+	/**
+	 * Create a queue for the keys the phases can give the vertices, i.e. their connectivity to A
+	 * minus the difference between their local and remote costs. Merging vertices doesn't change
+	 * the sums of these costs, so they bound the keys for every phase.
+	 *
+	 * @return the queue, or null if there are too many keys to look through in each phase
+	 */
+	BucketQueue bucketQueue() {
+		long sum = 0;
+		long edges = 0;
+		for (int v = 0; v < this.nodes.length; v++) {
+			if (!isActive(v))
+				continue;
+
+			InternalNode node = this.nodes[v];
+			sum += Math.abs((long) node.localCost - (long) node.remoteCost);
+			float[] costs = this.m.costs[v];
+			for (int k = 0; k < this.m.degree[v]; k++) {
+				// each edge is seen from both ends, which covers both signs of the connectivity
+				sum += Math.abs((long) costs[k]);
+			}
+			edges += this.m.degree[v];
 		}
-		//the same goes for the nodes, we want to merge the copies
-		InternalNode[] scratchNodes = new InternalNode[nodes.length];
-		for (int i = 0; i < nodes.length; i++) {
-			scratchNodes[i] = new InternalNode(nodes[i]);
+
+		if (2 * sum > Math.min(MAX_BUCKETS, Math.max(MIN_BUCKETS, this.activeNodes + edges)))
+			return null;
+
+		if (this.integerConnectivity == null || this.integerConnectivity.length != this.nodes.length)
+			this.integerConnectivity = new long[this.nodes.length];
+		// the last queue will do if its keys go as far
+		BucketQueue queue = this.spareBuckets;
+		if (this.reuse && queue != null && queue.bucket.length == this.nodes.length && queue.min <= -sum)
+			return queue;
+
+		queue = new BucketQueue(this.nodes.length, -sum, sum);
+		if (this.reuse)
+			this.spareBuckets = queue;
+		return queue;
+	}
+
+	/**
+	 * Same as minCutPhase() for costs which are whole numbers, adding them up as longs and taking
+	 * the most tightly connected vertex from a BucketQueue instead of a heap
+	 */
+	Cut bucketMinCutPhase() {
+		BucketQueue queue = this.buckets;
+		BitSet A = this.A;
+		A.clear();
+
+		int aIdx = this.startNode.id;
+		long localCost = (long) this.nodes[aIdx].localCost;
+		int s = aIdx, t = aIdx;
+		int size = 1;
+
+		A.set(aIdx);
+		queue.clear();
+		updateGains(queue, A, aIdx);
+
+		while (size < this.activeNodes) {
+			if (queue.isEmpty())
+				enqueueUnconnected(queue, A);
+
+			int vMaxIdx = queue.pop();
+			s = t;
+			t = vMaxIdx;
+			A.set(vMaxIdx);
+			size++;
+			localCost += (long) this.nodes[vMaxIdx].localCost;
+			updateGains(queue, A, vMaxIdx);
 		}
 
-		//keep track of which nodes we've already merged
-		Set<InternalNode> A = new HashSet<InternalNode>();
+		this.cut.set(this.m, this.nodes, localCost, s, t);
+		return this.cut;
+	}
 
-		// It's important that this stays at zero. This is the node in which we merge the node
-		// we determine to be the most tightly connected node in each iteration. This node then
-		// contains the sum of all the local and remote costs.
-		int aIdx = 0;
-		int s = 0, t = 0;
+	void enqueueUnconnected(BucketQueue queue, BitSet A) {
+		for (int i = 0; i < this.nodes.length; i++) {
+			if (A.get(i) || !isActive(i))
+				continue;
+
+			InternalNode node = this.nodes[i];
+			this.integerConnectivity[i] = 0;
+			queue.put(i, (long) node.remoteCost - (long) node.localCost);
+		}
+	}
+
+	void updateGains(BucketQueue queue, BitSet A, int v) {
+		int[] targets = this.m.targets[v];
+		float[] costs = this.m.costs[v];
+		long[] connectivity = this.integerConnectivity;
+		for (int k = 0; k < this.m.degree[v]; k++) {
+			int i = targets[k];
+			if (A.get(i))
+				continue;
+
+			InternalNode node = this.nodes[i];
+			if (queue.contains(i))
+				connectivity[i] += (long) costs[k];
+			else
+				connectivity[i] = (long) costs[k];
+
+			queue.put(i, connectivity[i] - ((long) node.localCost - (long) node.remoteCost));
+		}
+	}
+
+	/**
+	 * @return whether the next phase should scan the vertices in parallel, which takes a pool,
+	 *         enough active vertices and enough edges between them
+	 */
+	boolean parallelPhase() {
+		if (this.pool == null || this.activeNodes < this.parallelThreshold)
+			return false;
+
+		long active = this.activeNodes;
+		return (long) this.m.edgeCount() * this.parallelDensity >= active * active;
+	}
+
+	/**
+	 * Same as minCutPhase() but looking for the most tightly connected vertex by scanning every
+	 * vertex in parallel. The connectivity of the vertices which aren't connected to A is NaN.
+	 */
+	Cut parallelMinCutPhase() {
+		BitSet A = this.A;
+		A.clear();
+		Arrays.fill(this.connectivity, Float.NaN);
+
+		int aIdx = this.startNode.id;
+		float localCost = this.nodes[aIdx].localCost;
+		int s = aIdx, t = aIdx;
+		int size = 1;
+
+		A.set(aIdx);
+		this.pool.invoke(new ConnectivityUpdate(this, aIdx, 0, this.m.degree[aIdx]));
 
-		A.add(scratchNodes[aIdx]);
-		
 		// while A =/= V_i (paper)
-		while (A.size() < this.activeNodes) {
-			int vMaxIdx = 0;
-			float vMaxGain = Float.NEGATIVE_INFINITY;
+		while (size < this.activeNodes) {
 			// while v \in V_i and v \not\in A (paper)
-			for (int i = 0; i < scratchNodes.length; i++) {
-				if (A.contains(scratchNodes[i]) || graph[aIdx][i] == -1f) {
-					continue;
+			int vMaxIdx = this.pool.invoke(new GainScan(this, 0, this.nodes.length));
+			if (vMaxIdx < 0) {
+				// The rest of the graph is not connected to A, so its connectivity is 0
+				for (int i = 0; i < this.nodes.length; i++) {
+					if (!A.get(i) && isActive(i))
+						this.connectivity[i] = 0;
 				}
-				InternalNode node = scratchNodes[i];
-				float gain = graph[aIdx][i] - (node.localCost - node.remoteCost);
+				vMaxIdx = this.pool.invoke(new GainScan(this, 0, this.nodes.length));
+			}
+
+			// vMaxIdx is the most tightly connected vertex to A
+			s = t;
+			t = vMaxIdx;
+			A.set(vMaxIdx);
+			size++;
+			localCost += this.nodes[vMaxIdx].localCost;
+			this.pool.invoke(new ConnectivityUpdate(this, vMaxIdx, 0, this.m.degree[vMaxIdx]));
+		}
+
+		// return cut(A-t, t), s, t (paper)
+		this.cut.set(this.m, this.nodes, localCost, s, t);
+		return this.cut;
+	}
+
+	/** Add the edges of v to the connectivity of its neighbours outside of A */
+	static class ConnectivityUpdate extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Offload offload;
+		final int v, from, to;
+
+		ConnectivityUpdate(Offload offload, int v, int from, int to) {
+			this.offload = offload;
+			this.v = v;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PARALLEL_CHUNK) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ConnectivityUpdate(offload, v, from, mid), new ConnectivityUpdate(offload, v, mid, to));
+				return;
+			}
+
+			int[] targets = offload.m.targets[v];
+			float[] costs = offload.m.costs[v];
+			float[] connectivity = offload.connectivity;
+			for (int k = from; k < to; k++) {
+				int i = targets[k];
+				if (offload.A.get(i))
+					continue;
+
+				if (Float.isNaN(connectivity[i]))
+					connectivity[i] = costs[k];
+				else
+					connectivity[i] += costs[k];
+			}
+		}
+	}
+
+	/**
+	 * Find the vertex outside of A with the highest gain in a range of vertices, preferring the
+	 * lowest index as minCutPhase() does.
+	 */
+	static class GainScan extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+
+		final Offload offload;
+		final int from, to;
+
+		GainScan(Offload offload, int from, int to) {
+			this.offload = offload;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Integer compute() {
+			if (to - from > PARALLEL_CHUNK) {
+				int mid = (from + to) >>> 1;
+				GainScan left = new GainScan(offload, from, mid);
+				left.fork();
+				int right = new GainScan(offload, mid, to).compute();
+				return better(left.join(), right);
+			}
+
+			int vMaxIdx = -1;
+			float vMaxGain = Float.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				float connectivity = offload.connectivity[i];
+				if (Float.isNaN(connectivity) || offload.A.get(i))
+					continue;
+
+				InternalNode node = offload.nodes[i];
+				float gain = connectivity - (node.localCost - node.remoteCost);
 				if (gain > vMaxGain) {
 					vMaxGain = gain;
 					vMaxIdx = i;
 				}
 			}
 
-			// vMaxIdx is the most tightly connected vertex to A
-			s = t;
-			t = vMaxIdx;
-			A.add(scratchNodes[vMaxIdx]);
-			mergeVertices(graph, scratchNodes[aIdx], scratchNodes[vMaxIdx]);
+			return vMaxIdx;
 		}
 
-		A.remove(scratchNodes[t]);
+		/** pick between the results of two ranges, a is the one with the lower indices */
+		int better(int a, int b) {
+			if (a < 0)
+				return b;
+			if (b < 0)
+				return a;
 
-		// return cut(A-t, t), s, t (paper)
-		return new Cut(A, graph, this.m, scratchNodes, s, t);
+			return gain(b) > gain(a) ? b : a;
+		}
+
+		float gain(int i) {
+			InternalNode node = offload.nodes[i];
+			return offload.connectivity[i] - (node.localCost - node.remoteCost);
+		}
 	}
 }
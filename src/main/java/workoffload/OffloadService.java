@@ -0,0 +1,184 @@
+package workoffload;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs optimizations of CompiledGraphs for many callers at the same time, e.g. on a server.
+ *
+ * At most maxPending requests are queued or running at any time. Beyond that, submit() waits
+ * for one to finish and trySubmit() turns the request down, so a burst of requests can't pile
+ * up without bounds. Each result's stats say how long its request waited in the queue, and the
+ * service keeps counts and latencies over all requests.
+ *
+ * Requests run at the same time, so a cost model which several of them use must be thread-safe.
+ * Those of CostModels are, but weightedTimeAndEnergy() keeps the sum of the local costs of the
+ * graph it was last given to setNodes(), so one may only be shared by requests for the same
+ * graph. A custom model which keeps state from setNodes() needs the same care, or an instance
+ * per request.
+ */
+public class OffloadService {
+	final ExecutorService executor;
+	/** whether we created the executor, so shutting down is up to us */
+	final boolean ownExecutor;
+	final Semaphore pending;
+
+	final AtomicLong completed = new AtomicLong(), failed = new AtomicLong(), rejected = new AtomicLong();
+	/** sum and maximum of the time between submitting requests and their results */
+	final AtomicLong latencyNanos = new AtomicLong(), maxLatencyNanos = new AtomicLong();
+
+	/**
+	 * Run the requests on a pool of its own
+	 *
+	 * @param threads the number of requests to run at the same time
+	 * @param maxPending the number of requests which can be queued or running
+	 */
+	public OffloadService(int threads, int maxPending) {
+		this(Executors.newFixedThreadPool(threads), maxPending, true);
+	}
+
+	/**
+	 * Run the requests on the given executor, e.g. one which starts a virtual thread per task
+	 * where those are available. The service doesn't shut it down.
+	 *
+	 * @param maxPending the number of requests which can be queued or running
+	 */
+	public OffloadService(ExecutorService executor, int maxPending) {
+		this(executor, maxPending, false);
+	}
+
+	OffloadService(ExecutorService executor, int maxPending, boolean ownExecutor) {
+		if (maxPending < 1)
+			throw new IllegalArgumentException("maxPending must be at least 1");
+
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+		this.pending = new Semaphore(maxPending);
+	}
+
+	public Future<Offload.Result> submit(CompiledGraph graph, CostModel model) throws InterruptedException {
+		return submit(graph, model, null);
+	}
+
+	/**
+	 * Optimize a graph, waiting first if too many requests are pending. The model may be shared
+	 * with other requests, see the class documentation.
+	 *
+	 * @param edgeCosts costs to use for the graph's edges instead of the compiled ones, or null
+	 */
+	public Future<Offload.Result> submit(CompiledGraph graph, CostModel model, float[] edgeCosts)
+			throws InterruptedException {
+		this.pending.acquire();
+		return execute(graph, model, edgeCosts);
+	}
+
+	/**
+	 * Optimize a graph unless too many requests are pending. The model may be shared with other
+	 * requests, see the class documentation.
+	 *
+	 * @param edgeCosts costs to use for the graph's edges instead of the compiled ones, or null
+	 * @return the future result or null if we turned the request down
+	 */
+	public Future<Offload.Result> trySubmit(CompiledGraph graph, CostModel model, float[] edgeCosts) {
+		if (!this.pending.tryAcquire()) {
+			this.rejected.incrementAndGet();
+			return null;
+		}
+
+		return execute(graph, model, edgeCosts);
+	}
+
+	Future<Offload.Result> execute(final CompiledGraph graph, final CostModel model, final float[] edgeCosts) {
+		final long submitted = System.nanoTime();
+		try {
+			return this.executor.submit(new Callable<Offload.Result>() {
+				public Offload.Result call() throws Exception {
+					long started = System.nanoTime();
+					try {
+						Offload.Result result = graph.optimize(model, edgeCosts);
+						result.stats.queueNanos = started - submitted;
+						completed.incrementAndGet();
+						return result;
+					} catch (Exception e) {
+						failed.incrementAndGet();
+						throw e;
+					} finally {
+						pending.release();
+						record(System.nanoTime() - submitted);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.pending.release();
+			this.rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	void record(long latency) {
+		this.latencyNanos.addAndGet(latency);
+		long max = this.maxLatencyNanos.get();
+		while (latency > max && !this.maxLatencyNanos.compareAndSet(max, latency)) {
+			max = this.maxLatencyNanos.get();
+		}
+	}
+
+	/**
+	 * @return the number of requests which returned a result
+	 */
+	public long completed() {
+		return this.completed.get();
+	}
+
+	/**
+	 * @return the number of requests which threw an exception
+	 */
+	public long failed() {
+		return this.failed.get();
+	}
+
+	/**
+	 * @return the number of requests we turned down
+	 */
+	public long rejected() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * @return the average time between submitting a request and its result, in nanoseconds
+	 */
+	public long averageLatencyNanos() {
+		long done = this.completed.get() + this.failed.get();
+		return done == 0 ? 0 : this.latencyNanos.get() / done;
+	}
+
+	/**
+	 * @return the longest time between submitting a request and its result, in nanoseconds
+	 */
+	public long maxLatencyNanos() {
+		return this.maxLatencyNanos.get();
+	}
+
+	/**
+	 * Stop taking requests and, if we created the pool, let the pending ones finish and stop it
+	 */
+	public void shutdown() {
+		if (this.ownExecutor)
+			this.executor.shutdown();
+	}
+
+	/**
+	 * Wait for the pending requests to finish after shutdown()
+	 *
+	 * @return whether they did before the timeout
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.executor.awaitTermination(timeout, unit);
+	}
+}
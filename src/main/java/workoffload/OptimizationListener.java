@@ -0,0 +1,17 @@
+package workoffload;
+
+/**
+ * Gets told about the progress of an optimization, see Offload.setListener(). In the components
+ * mode with a pool, it's called from the pool's threads.
+ */
+public interface OptimizationListener {
+	/**
+	 * Called after each phase of the solver.
+	 *
+	 * @param phase the number of the phase, starting at 1 for each part of the graph
+	 * @param cost the cost of the cut MCOP found in this phase. The max-flow solver doesn't have a
+	 *             cut until the end, it passes the lower bound on the cost given by the flow
+	 *             so far instead.
+	 */
+	void phaseCompleted(int phase, float cost);
+}
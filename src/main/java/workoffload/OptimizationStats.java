@@ -0,0 +1,56 @@
+package workoffload;
+
+
+/**
+ * What happened during one optimization, see Offload.Result.stats. Times are in nanoseconds.
+ */
+public class OptimizationStats {
+	/** number of phases the solver ran, summed over the parts in the components mode */
+	public int phases;
+	/** number of vertices merged into others */
+	public int merges;
+	/** number of vertices and edges in the graph when the search started */
+	public int vertices, edges;
+
+	/** applying the cost model to the input, and compiling it if needed */
+	public long prepareNanos;
+	/** merging the unoffloadable nodes and applying the reductions */
+	public long reduceNanos;
+	/** looking for the cut */
+	public long cutNanos;
+	/** the whole optimization */
+	public long totalNanos;
+	/** waiting for a thread in an OffloadService, before the optimization started */
+	public long queueNanos;
+
+	/**
+	 * Forget everything, for the next optimization
+	 */
+	void clear() {
+		this.phases = this.merges = this.vertices = this.edges = 0;
+		this.prepareNanos = this.reduceNanos = this.cutNanos = this.totalNanos = this.queueNanos = 0;
+	}
+
+	OptimizationStats copy() {
+		OptimizationStats copy = new OptimizationStats();
+		copy.phases = this.phases;
+		copy.merges = this.merges;
+		copy.vertices = this.vertices;
+		copy.edges = this.edges;
+		copy.prepareNanos = this.prepareNanos;
+		copy.reduceNanos = this.reduceNanos;
+		copy.cutNanos = this.cutNanos;
+		copy.totalNanos = this.totalNanos;
+		copy.queueNanos = this.queueNanos;
+		return copy;
+	}
+
+	@Override
+	public String toString() {
+		return "phases=" + this.phases + " merges=" + this.merges
+				+ " vertices=" + this.vertices + " edges=" + this.edges
+				+ " prepare=" + this.prepareNanos / 1000 + "us reduce=" + this.reduceNanos / 1000
+				+ "us cut=" + this.cutNanos / 1000 + "us total=" + this.totalNanos / 1000
+				+ "us queue=" + this.queueNanos / 1000 + "us";
+	}
+}
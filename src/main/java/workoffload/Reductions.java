@@ -0,0 +1,198 @@
+package workoffload;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Shrinks the graph before we look for the cut, using reductions which keep the cheapest
+ * partition of the graph, and decides the removed nodes once we know the cut.
+ *
+ * - A node without any edges costs the cheaper of its local and remote costs whatever happens
+ *   elsewhere, so it's folded into the start node.
+ * - A node with a single neighbour u costs min(local, remote + edge) when u is local and
+ *   min(remote, local + edge) when u is remote, so those are added to u's costs.
+ * - A node with two neighbours u and w can be replaced by costs on u and w and an edge between
+ *   them, as its cheapest side only depends on where u and w are.
+ * - A node whose remote cost exceeds its local cost by at least the sum of its edges is never
+ *   worse off local, so it's merged into the start node.
+ *
+ * The start node and unoffloadable nodes (merged into it) are never removed.
+ */
+class Reductions {
+	/** a node removed from the graph, to decide where it goes once we know the cut */
+	static class Removed {
+		/** the removed node */
+		final int v;
+		/** its neighbours when it was removed, -1 if it had fewer */
+		final int u, w;
+		/** its costs and those of its edges to u and w */
+		final float localCost, remoteCost, uCost, wCost;
+
+		Removed(int v, int u, int w, float localCost, float remoteCost, float uCost, float wCost) {
+			this.v = v;
+			this.u = u;
+			this.w = w;
+			this.localCost = localCost;
+			this.remoteCost = remoteCost;
+			this.uCost = uCost;
+			this.wCost = wCost;
+		}
+
+		/**
+		 * @return whether the node is remote given the sides of its neighbours
+		 */
+		boolean isRemote(boolean uRemote, boolean wRemote) {
+			float local = this.localCost, remote = this.remoteCost;
+			// each edge costs something on the side opposite its neighbour
+			if (uRemote)
+				local += this.uCost;
+			else
+				remote += this.uCost;
+			if (wRemote)
+				local += this.wCost;
+			else
+				remote += this.wCost;
+
+			return remote < local;
+		}
+	}
+
+	final Offload offload;
+	/** removed nodes in the order we removed them */
+	final List<Removed> removed = new ArrayList<Removed>();
+	/** stack of nodes we still have to check and which ones are in it */
+	int[] pending;
+	BitSet queued;
+	int size;
+
+	Reductions(Offload offload) {
+		this.offload = offload;
+	}
+
+	/**
+	 * Apply the reductions until none of them applies anymore, or the optimization has to stop.
+	 */
+	void reduce() {
+		Offload.InternalNode[] nodes = this.offload.nodes;
+		int start = this.offload.startNode.id;
+
+		// Nodes which need to be (re-)checked. Everything to begin with, then the neighbours of
+		// whatever we changed.
+		this.pending = new int[nodes.length];
+		this.queued = new BitSet(nodes.length);
+		this.size = 0;
+		for (int i = nodes.length - 1; i >= 0; i--) {
+			if (i != start && this.offload.isActive(i))
+				enqueue(i);
+		}
+
+		while (this.size > 0 && !this.offload.shouldStop()) {
+			int v = this.pending[--this.size];
+			this.queued.clear(v);
+			if (this.offload.isActive(v))
+				reduce(v);
+		}
+	}
+
+	void enqueue(int v) {
+		this.pending[this.size++] = v;
+		this.queued.set(v);
+	}
+
+	/**
+	 * Check the neighbours of v again, as we're about to change it
+	 */
+	void enqueueNeighbours(int v) {
+		SparseGraph m = this.offload.m;
+		int start = this.offload.startNode.id;
+		for (int k = 0; k < m.degree[v]; k++) {
+			int u = m.targets[v][k];
+			if (u != start && !this.queued.get(u))
+				enqueue(u);
+		}
+	}
+
+	/**
+	 * Apply the first reduction which fits v
+	 *
+	 * @return whether we applied one
+	 */
+	boolean reduce(int v) {
+		SparseGraph m = this.offload.m;
+		Offload.InternalNode node = this.offload.nodes[v];
+		float localCost = node.localCost, remoteCost = node.remoteCost;
+
+		if (remoteCost - localCost >= m.weightedDegree(v)) {
+			enqueueNeighbours(v);
+			this.offload.merge(this.offload.startNode, node);
+			return true;
+		}
+
+		switch (m.degree[v]) {
+		case 0:
+			remove(v, -1, -1, 0, 0);
+			this.offload.startNode.localCost += Math.min(localCost, remoteCost);
+			return true;
+		case 1: {
+			int u = m.targets[v][0];
+			float uCost = m.costs[v][0];
+			remove(v, u, -1, uCost, 0);
+			Offload.InternalNode un = this.offload.nodes[u];
+			un.localCost += Math.min(localCost, remoteCost + uCost);
+			un.remoteCost += Math.min(remoteCost, localCost + uCost);
+			return true;
+		}
+		case 2: {
+			int u = m.targets[v][0], w = m.targets[v][1];
+			float uCost = m.costs[v][0], wCost = m.costs[v][1];
+			remove(v, u, w, uCost, wCost);
+
+			// v's cheapest cost for each combination of the sides of u and w
+			float ll = Math.min(localCost, remoteCost + uCost + wCost);
+			float rr = Math.min(remoteCost, localCost + uCost + wCost);
+			float lr = Math.min(localCost + wCost, remoteCost + uCost);
+			float rl = Math.min(localCost + uCost, remoteCost + wCost);
+
+			// which we can write as ll + (u remote ? uExtra : 0) + (w remote ? wExtra : 0)
+			// + (u and w on different sides ? edge : 0)
+			float edge = (lr + rl - ll - rr) / 2;
+			float uExtra = rl - ll - edge;
+			float wExtra = lr - ll - edge;
+
+			Offload.InternalNode un = this.offload.nodes[u], wn = this.offload.nodes[w];
+			un.localCost += ll;
+			un.remoteCost += ll + uExtra;
+			wn.remoteCost += wExtra;
+			m.addEdge(u, w, edge);
+			return true;
+		}
+		default:
+			return false;
+		}
+	}
+
+	void remove(int v, int u, int w, float uCost, float wCost) {
+		enqueueNeighbours(v);
+		Offload.InternalNode node = this.offload.nodes[v];
+		this.removed.add(new Removed(v, u, w, node.localCost, node.remoteCost, uCost, wCost));
+		this.offload.m.removeVertex(v);
+		this.offload.remove(v);
+	}
+
+	/**
+	 * Decide the side of the removed nodes, going backwards so that their neighbours have been
+	 * decided by the time we get to them.
+	 *
+	 * @param remote the input nodes which are remote, to which we add the removed ones
+	 */
+	void expand(BitSet remote) {
+		for (int k = this.removed.size() - 1; k >= 0; k--) {
+			Removed r = this.removed.get(k);
+			boolean uRemote = r.u >= 0 && remote.get(r.u);
+			boolean wRemote = r.w >= 0 && remote.get(r.w);
+			if (r.isRemote(uRemote, wRemote))
+				this.offload.setMembers(remote, r.v);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package workoffload;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of an Offload, for when the costs keep coming back to the same few
+ * values, e.g. as the network switches between a handful of states.
+ *
+ * Results are looked up by the costs the solver would see, i.e. the node and edge costs after
+ * applying the cost model, so two models which give the same costs share their results. The
+ * costs are rounded to a relative tolerance first, so costs which are practically the same hit
+ * the same entry. A hit returns the result as it was computed for the costs which created the
+ * entry.
+ *
+ * The entries also depend on the graph, which changes when edges are added, and on the solver
+ * settings of the Offload. Once full, the least recently used entry makes room. With the
+ * Offload's reuse mode, the entries are copies of the results it returns.
+ */
+public class ResultCache {
+	final Offload offload;
+	final int capacity;
+	/** number of low bits of the costs' float representation we drop */
+	final int shift;
+	final Map<Key, Offload.Result> results;
+	long hits, misses;
+
+	/**
+	 * @param capacity the largest number of results to keep
+	 * @param tolerance how much costs can differ, relative to their size, to be considered the
+	 *                  same, e.g. 0.01. 0 only lets the same costs hit an entry.
+	 */
+	public ResultCache(Offload offload, final int capacity, float tolerance) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("the capacity must be at least 1");
+		if (!(tolerance >= 0 && tolerance < 1))
+			throw new IllegalArgumentException("the tolerance must be at least 0 and less than 1");
+
+		this.offload = offload;
+		this.capacity = capacity;
+		// a float has 23 bits after the leading one, keep as many of them as the tolerance needs
+		int bits = tolerance == 0 ? 23 : (int) Math.ceil(-Math.log(tolerance) / Math.log(2));
+		this.shift = 23 - Math.min(bits, 23);
+		this.results = new LinkedHashMap<Key, Offload.Result>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Offload.Result> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Return the result for costs like these if we have one, otherwise optimize and remember the
+	 * result. Results which were stopped early aren't kept.
+	 */
+	public Offload.Result optimize(CostModel model) throws Exception {
+		Key key = key(model);
+		Offload.Result result = this.results.get(key);
+		if (result != null) {
+			this.hits++;
+			return result;
+		}
+
+		this.misses++;
+		result = this.offload.optimize(model);
+		// in the reuse mode the next optimization changes the result we got
+		if (this.offload.reuse)
+			result = result.copy();
+		if (!result.partial)
+			this.results.put(key, result);
+		return result;
+	}
+
+	/**
+	 * @return the costs the solver would get for this model, rounded, along with what else the
+	 *         result depends on
+	 */
+	Key key(CostModel model) {
+		Offload offload = this.offload;
+		offload.ensureCompiled();
+		Offload.Node[] nodes = offload.userNodes;
+		model.setNodes(nodes);
+
+		int size = nodes.length, edgeCount = offload.edges.length;
+		float[] localCosts = new float[size], remoteCosts = new float[size], edgeCosts = new float[edgeCount];
+		for (int v = 0; v < size; v++) {
+			localCosts[v] = nodes[v].localCost;
+			remoteCosts[v] = nodes[v].remoteCost;
+		}
+		for (int k = 0; k < edgeCount; k++) {
+			edgeCosts[k] = offload.edges[k].cost;
+		}
+		CostModels.localCosts(model, localCosts, localCosts, size);
+		CostModels.remoteCosts(model, remoteCosts, remoteCosts, size);
+		CostModels.transmissionCosts(model, edgeCosts, edgeCosts, edgeCount);
+
+		int[] values = new int[2 * size + edgeCount];
+		int i = 0;
+		for (int v = 0; v < size; v++) {
+			values[i++] = quantize(localCosts[v]);
+			values[i++] = quantize(remoteCosts[v]);
+		}
+		for (int k = 0; k < edgeCount; k++) {
+			values[i++] = quantize(edgeCosts[k]);
+		}
+
+		return new Key(offload.version, offload.solver, offload.reduce, offload.components, offload.integerCosts,
+				values);
+	}
+
+	/**
+	 * Round a cost to the bits of its float representation we keep. Rounding the representation
+	 * keeps the same relative precision whatever the scale of the costs.
+	 */
+	int quantize(float cost) {
+		if (cost == 0)
+			return 0;
+
+		int bits = Float.floatToIntBits(cost);
+		if (this.shift == 0)
+			return bits;
+
+		return (bits + (1 << (this.shift - 1))) >> this.shift;
+	}
+
+	/**
+	 * @return the number of optimizations answered from the cache
+	 */
+	public long hits() {
+		return this.hits;
+	}
+
+	/**
+	 * @return the number of optimizations which had to run the solver
+	 */
+	public long misses() {
+		return this.misses;
+	}
+
+	/**
+	 * @return the number of results we hold
+	 */
+	public int size() {
+		return this.results.size();
+	}
+
+	/**
+	 * Forget all results, keeping the counters
+	 */
+	public void clear() {
+		this.results.clear();
+	}
+
+	static class Key {
+		final int version;
+		final Solver solver;
+		final boolean reduce, components, integerCosts;
+		final int[] values;
+		final int hash;
+
+		Key(int version, Solver solver, boolean reduce, boolean components, boolean integerCosts, int[] values) {
+			this.version = version;
+			this.solver = solver;
+			this.reduce = reduce;
+			this.components = components;
+			this.integerCosts = integerCosts;
+			this.values = values;
+			this.hash = 31 * (31 * version + System.identityHashCode(solver)) + Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+
+			Key other = (Key) o;
+			return this.hash == other.hash && this.version == other.version && this.solver == other.solver
+					&& this.reduce == other.reduce && this.components == other.components
+					&& this.integerCosts == other.integerCosts
+					&& Arrays.equals(this.values, other.values);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package workoffload;
+
+import java.util.BitSet;
+
+/**
+ * Algorithm which decides the partition once the unoffloadable nodes have been merged into the
+ * start node. See Solvers for the ones implemented by this package.
+ */
+public interface Solver {
+	/**
+	 * @param offload the graph to partition
+	 * @param remote set to which we add the ids of the input nodes on the remote side
+	 * @return the cost of the partition
+	 */
+	float solve(Offload offload, BitSet remote);
+}
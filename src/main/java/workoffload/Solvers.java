@@ -0,0 +1,37 @@
+package workoffload;
+
+import java.util.BitSet;
+
+
+/**
+ * Algorithms to partition the graph with
+ */
+public class Solvers {
+	/**
+	 * The MCOP algorithm, which runs a phase per offloadable node. This is the default.
+	 */
+	static public Solver mcop() {
+		return new Mcop();
+	}
+
+	/**
+	 * Minimum s-t cut between the local side and a virtual remote node, found with a maximum
+	 * flow. This finds the cheapest partition, as long as the transmission costs are not
+	 * negative, and is much faster than MCOP on large graphs.
+	 */
+	static public Solver maxFlow() {
+		return new MaxFlowSolver();
+	}
+
+	static class Mcop implements Solver {
+		public float solve(Offload offload, BitSet remote) {
+			return offload.findCut(remote);
+		}
+	}
+
+	static class MaxFlowSolver implements Solver {
+		public float solve(Offload offload, BitSet remote) {
+			return MaxFlow.solve(offload, remote);
+		}
+	}
+}
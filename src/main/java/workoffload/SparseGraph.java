@@ -0,0 +1,420 @@
+package workoffload;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Undirected weighted graph stored as one adjacency list per vertex, each list being a pair of
+ * primitive arrays (target vertex and edge cost).
+ *
+ * This replaces the n*n edge matrix, so the memory needed grows with the number of edges instead
+ * of with the square of the number of vertices. Missing edges are simply not stored.
+ */
+class SparseGraph {
+	static final int[] NO_TARGETS = new int[0];
+	static final float[] NO_COSTS = new float[0];
+	static final int INITIAL_CAPACITY = 4;
+	/** number of neighbours each task updates when merging in parallel */
+	static final int PARALLEL_CHUNK = 256;
+
+	/** neighbours of each vertex, only the first degree[i] entries are valid */
+	int[][] targets;
+	/** cost of the edge to the neighbour in the same position of targets */
+	float[][] costs;
+	/** number of neighbours of each vertex */
+	int[] degree;
+	/**
+	 * Scratch space for merging, maps a vertex to its position in the adjacency list of the
+	 * vertex we're merging into. Always filled with -1 between calls.
+	 */
+	private int[] position;
+	/** Scratch space for merging, the new cost of the edge to each of t's neighbours */
+	private float[] mergedCosts = NO_COSTS;
+	/**
+	 * Whether vertices which lose all their edges keep their arrays, so copyFrom() and setEdge()
+	 * can fill them again without allocating
+	 */
+	boolean retainRows;
+
+	SparseGraph(int size) {
+		this.targets = new int[size][];
+		this.costs = new float[size][];
+		this.degree = new int[size];
+		Arrays.fill(this.targets, NO_TARGETS);
+		Arrays.fill(this.costs, NO_COSTS);
+	}
+
+	/**
+	 * Create a deep copy of a graph
+	 */
+	SparseGraph(SparseGraph other) {
+		int size = other.size();
+		this.targets = new int[size][];
+		this.costs = new float[size][];
+		this.degree = Arrays.copyOf(other.degree, size);
+		for (int i = 0; i < size; i++) {
+			this.targets[i] = Arrays.copyOf(other.targets[i], other.degree[i]);
+			this.costs[i] = Arrays.copyOf(other.costs[i], other.degree[i]);
+		}
+	}
+
+	private SparseGraph(int[][] targets, float[][] costs, int[] degree) {
+		this.targets = targets;
+		this.costs = costs;
+		this.degree = degree;
+	}
+
+	/**
+	 * Build a graph from a list of edges in linear time. An edge between a pair of vertices which
+	 * already have one (in either direction) doesn't add another one, and each vertex lists its
+	 * neighbours in the order of their first edges, as setEdge() would. All the costs are 0.
+	 *
+	 * @param slots receives two entries per edge: the position of the edge in the lists of its
+	 *              source and of its target, so its costs can be set without looking for it
+	 */
+	static SparseGraph fromEdges(int size, int[] source, int[] target, int[] slots) {
+		int count = source.length;
+
+		// Sort the edges by their lower vertex, keeping their order, so that the edges of each
+		// pair of vertices come together.
+		int[] first = new int[size + 1];
+		for (int k = 0; k < count; k++) {
+			first[Math.min(source[k], target[k]) + 1]++;
+		}
+		for (int v = 0; v < size; v++) {
+			first[v + 1] += first[v];
+		}
+		int[] order = new int[count];
+		int[] next = Arrays.copyOf(first, size);
+		for (int k = 0; k < count; k++) {
+			order[next[Math.min(source[k], target[k])]++] = k;
+		}
+
+		// pair[k] is the first edge between the same vertices as k. seen[w] is that edge for the
+		// current lower vertex and w, valid while owner[w] is the lower vertex plus one.
+		int[] pair = new int[count], seen = new int[size], owner = new int[size];
+		int[] degree = new int[size];
+		for (int u = 0; u < size; u++) {
+			for (int i = first[u]; i < first[u + 1]; i++) {
+				int k = order[i];
+				int w = Math.max(source[k], target[k]);
+				if (owner[w] == u + 1) {
+					pair[k] = seen[w];
+					continue;
+				}
+
+				owner[w] = u + 1;
+				seen[w] = pair[k] = k;
+				degree[u]++;
+				degree[w]++;
+			}
+		}
+
+		int[][] targets = new int[size][];
+		float[][] costs = new float[size][];
+		for (int v = 0; v < size; v++) {
+			targets[v] = degree[v] == 0 ? NO_TARGETS : new int[degree[v]];
+			costs[v] = degree[v] == 0 ? NO_COSTS : new float[degree[v]];
+		}
+		int[] filled = new int[size];
+		for (int k = 0; k < count; k++) {
+			int i = source[k], j = target[k], p = pair[k];
+			if (p == k) {
+				slots[2 * k] = filled[i];
+				targets[i][filled[i]++] = j;
+				slots[2 * k + 1] = filled[j];
+				targets[j][filled[j]++] = i;
+			} else if (source[p] == i) {
+				slots[2 * k] = slots[2 * p];
+				slots[2 * k + 1] = slots[2 * p + 1];
+			} else {
+				slots[2 * k] = slots[2 * p + 1];
+				slots[2 * k + 1] = slots[2 * p];
+			}
+		}
+
+		return new SparseGraph(targets, costs, degree);
+	}
+
+	/**
+	 * Create a graph with the same edges as another one, sharing its lists of neighbours. Neither
+	 * graph may add or remove edges afterwards, only change their costs. All the costs are 0.
+	 */
+	static SparseGraph withEdgesOf(SparseGraph other) {
+		int size = other.size();
+		float[][] costs = new float[size][];
+		for (int v = 0; v < size; v++) {
+			costs[v] = other.degree[v] == 0 ? NO_COSTS : new float[other.degree[v]];
+		}
+
+		return new SparseGraph(other.targets, costs, other.degree);
+	}
+
+	/**
+	 * Make this graph a copy of another one of the same size, reusing our arrays where they're
+	 * large enough
+	 */
+	void copyFrom(SparseGraph other) {
+		for (int i = 0; i < this.degree.length; i++) {
+			int deg = other.degree[i];
+			if (this.targets[i].length < deg) {
+				int capacity = Math.max(INITIAL_CAPACITY, deg);
+				this.targets[i] = new int[capacity];
+				this.costs[i] = new float[capacity];
+			}
+			System.arraycopy(other.targets[i], 0, this.targets[i], 0, deg);
+			System.arraycopy(other.costs[i], 0, this.costs[i], 0, deg);
+			this.degree[i] = deg;
+		}
+	}
+
+	int size() {
+		return this.degree.length;
+	}
+
+	/**
+	 * @return the cost of the edge between i and j or -1 if there is no such edge
+	 */
+	float cost(int i, int j) {
+		int idx = indexOf(i, j);
+		return idx < 0 ? -1f : this.costs[i][idx];
+	}
+
+	/**
+	 * Set the cost of the edge between i and j, creating it if it does not exist.
+	 *
+	 * @return whether the edge was created
+	 */
+	boolean setEdge(int i, int j, float cost) {
+		setHalfEdge(j, i, cost);
+		return setHalfEdge(i, j, cost);
+	}
+
+	/**
+	 * Add to the cost of the edge between i and j, creating it if it does not exist.
+	 */
+	void addEdge(int i, int j, float cost) {
+		int idx = indexOf(i, j);
+		if (idx >= 0)
+			setEdge(i, j, this.costs[i][idx] + cost);
+		else
+			setEdge(i, j, cost);
+	}
+
+	/**
+	 * Remove all the edges of a vertex
+	 */
+	void removeVertex(int v) {
+		for (int k = 0; k < this.degree[v]; k++) {
+			removeHalfEdge(this.targets[v][k], v);
+		}
+
+		dropRow(v);
+	}
+
+	/**
+	 * @return the number of edges in the graph
+	 */
+	int edgeCount() {
+		int sum = 0;
+		for (int i = 0; i < this.degree.length; i++) {
+			sum += this.degree[i];
+		}
+
+		return sum / 2;
+	}
+
+	/**
+	 * Sum of the costs of all the edges of a vertex
+	 */
+	float weightedDegree(int i) {
+		float sum = 0;
+		float[] row = this.costs[i];
+		for (int k = 0; k < this.degree[i]; k++) {
+			sum += row[k];
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Merge vertex t into vertex s. Edges with a common target have their costs added up, the
+	 * edge between s and t disappears and t is left without any edges.
+	 */
+	void merge(int s, int t) {
+		merge(s, t, null, 0);
+	}
+
+	/**
+	 * Merge vertex t into vertex s, updating t's neighbours in parallel if it has at least
+	 * 'threshold' of them.
+	 *
+	 * @param pool the pool to run in or null to do all the work in the calling thread
+	 */
+	void merge(int s, int t, ForkJoinPool pool, int threshold) {
+		if (this.position == null) {
+			this.position = new int[size()];
+			Arrays.fill(this.position, -1);
+		}
+
+		removeHalfEdge(s, t);
+		removeHalfEdge(t, s);
+
+		int[] sTargets = this.targets[s];
+		for (int k = 0; k < this.degree[s]; k++) {
+			this.position[sTargets[k]] = k;
+		}
+
+		int tDegree = this.degree[t];
+		int[] tTargets = this.targets[t];
+		float[] tCosts = this.costs[t];
+		if (this.mergedCosts.length < tDegree)
+			this.mergedCosts = new float[tDegree];
+
+		for (int k = 0; k < tDegree; k++) {
+			int u = tTargets[k];
+			float tCost = tCosts[k];
+			int idx = this.position[u];
+			if (idx < 0) {
+				this.mergedCosts[k] = tCost;
+				this.position[u] = appendHalfEdge(s, u, tCost);
+			} else {
+				this.mergedCosts[k] = this.costs[s][idx] + tCost;
+				this.costs[s][idx] = this.mergedCosts[k];
+			}
+		}
+
+		// Each of t's neighbours has an edge to t and possibly to s, leave a single one to s.
+		// Every neighbour only touches its own list, so they can be updated independently.
+		if (pool != null && tDegree >= threshold)
+			pool.invoke(new Relink(this, s, t, 0, tDegree));
+		else
+			relinkNeighbours(s, t, 0, tDegree);
+
+		sTargets = this.targets[s];
+		for (int k = 0; k < this.degree[s]; k++) {
+			this.position[sTargets[k]] = -1;
+		}
+
+		dropRow(t);
+	}
+
+	/**
+	 * Leave a vertex without any edges, letting go of its arrays unless we retain them
+	 */
+	void dropRow(int v) {
+		if (!this.retainRows) {
+			this.targets[v] = NO_TARGETS;
+			this.costs[v] = NO_COSTS;
+		}
+		this.degree[v] = 0;
+	}
+
+	/**
+	 * Point the edges of t's neighbours between 'from' and 'to' in its list at s instead
+	 */
+	void relinkNeighbours(int s, int t, int from, int to) {
+		int[] tTargets = this.targets[t];
+		for (int k = from; k < to; k++) {
+			relinkHalfEdge(tTargets[k], t, s, this.mergedCosts[k]);
+		}
+	}
+
+	int indexOf(int i, int j) {
+		int[] row = this.targets[i];
+		for (int k = 0; k < this.degree[i]; k++) {
+			if (row[k] == j)
+				return k;
+		}
+
+		return -1;
+	}
+
+	boolean setHalfEdge(int i, int j, float cost) {
+		int idx = indexOf(i, j);
+		if (idx >= 0) {
+			this.costs[i][idx] = cost;
+			return false;
+		}
+
+		appendHalfEdge(i, j, cost);
+		return true;
+	}
+
+	int appendHalfEdge(int i, int j, float cost) {
+		int deg = this.degree[i];
+		if (deg == this.targets[i].length) {
+			int capacity = Math.max(INITIAL_CAPACITY, deg * 2);
+			this.targets[i] = Arrays.copyOf(this.targets[i], capacity);
+			this.costs[i] = Arrays.copyOf(this.costs[i], capacity);
+		}
+
+		this.targets[i][deg] = j;
+		this.costs[i][deg] = cost;
+		this.degree[i] = deg + 1;
+
+		return deg;
+	}
+
+	void removeHalfEdge(int i, int j) {
+		int idx = indexOf(i, j);
+		if (idx < 0)
+			return;
+
+		// move the last entry into the hole, the order of the list does not matter
+		int last = --this.degree[i];
+		this.targets[i][idx] = this.targets[i][last];
+		this.costs[i][idx] = this.costs[i][last];
+	}
+
+	/**
+	 * Replace u's edge to 'from' with an edge to 'to' of the given cost, dropping any edge to 'to'
+	 * which u might have had already.
+	 */
+	void relinkHalfEdge(int u, int from, int to, float cost) {
+		int[] row = this.targets[u];
+		int fromIdx = -1, toIdx = -1;
+		for (int k = 0; k < this.degree[u]; k++) {
+			if (row[k] == from)
+				fromIdx = k;
+			else if (row[k] == to)
+				toIdx = k;
+		}
+
+		if (toIdx >= 0) {
+			this.costs[u][toIdx] = cost;
+			removeHalfEdge(u, from);
+		} else {
+			row[fromIdx] = to;
+			this.costs[u][fromIdx] = cost;
+		}
+	}
+
+	/** Relink a range of t's neighbours, splitting it up until it's small enough */
+	static class Relink extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final SparseGraph graph;
+		final int s, t, from, to;
+
+		Relink(SparseGraph graph, int s, int t, int from, int to) {
+			this.graph = graph;
+			this.s = s;
+			this.t = t;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_CHUNK) {
+				graph.relinkNeighbours(s, t, from, to);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new Relink(graph, s, t, from, mid), new Relink(graph, s, t, mid, to));
+		}
+	}
+}
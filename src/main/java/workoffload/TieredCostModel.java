@@ -0,0 +1,21 @@
+package workoffload;
+
+/**
+ * Cost model for TieredOffload, where the computation can run on more than two tiers, e.g. the
+ * device, an edge server and the cloud.
+ */
+public interface TieredCostModel {
+	/**
+	 * @param tier the tier the node runs on
+	 * @param cost the node's cost on that tier
+	 */
+	float nodeCost(int tier, float cost);
+
+	/**
+	 * The cost of an edge whose nodes run on two different tiers. It must not be infinite and,
+	 * for the best results, going through another tier must not be cheaper than going directly.
+	 *
+	 * @param cost the edge's cost
+	 */
+	float transmissionCost(int from, int to, float cost);
+}
@@ -0,0 +1,249 @@
+package workoffload;
+
+import java.util.Arrays;
+
+/**
+ * Partitions a graph over more than two tiers, e.g. the device (tier 0), a nearby edge server
+ * and the cloud. Each node has a cost on each tier and each edge costs what the cost model says
+ * for the tiers its nodes run on, nothing when they're on the same one.
+ *
+ * Finding the cheapest assignment is NP-hard from three tiers on, so this improves it with
+ * expansion moves instead: starting with everything on the device, each move lets any number of
+ * nodes switch to one tier at the same time and picks the best such switch with a minimum cut
+ * (see MaxFlow). We go through the tiers until none of them makes the assignment any cheaper.
+ * When the transmission costs are the same for each pair of tiers, the result costs at most
+ * twice as much as the cheapest assignment.
+ *
+ * Nodes are numbered from 0 in the order in which they're added.
+ */
+public class TieredOffload {
+	final int tiers;
+	/** cost of each node on each tier, tiers entries per node */
+	float[] nodeCosts;
+	int size;
+
+	int[] edgeSource, edgeTarget;
+	float[] edgeCosts;
+	int edgeCount;
+
+	/**
+	 * @param tiers the number of tiers, including the device
+	 */
+	public TieredOffload(int tiers) {
+		if (tiers < 2)
+			throw new IllegalArgumentException("there must be at least two tiers");
+
+		this.tiers = tiers;
+		this.nodeCosts = new float[16 * tiers];
+		this.edgeSource = new int[16];
+		this.edgeTarget = new int[16];
+		this.edgeCosts = new float[16];
+	}
+
+	/**
+	 * Add a node with its cost on each tier. A node which can't run on some tier has an infinite
+	 * cost there, but every node must be able to run on the device.
+	 *
+	 * @return the number of the node
+	 */
+	public int addNode(float... costs) {
+		if (costs.length != this.tiers)
+			throw new IllegalArgumentException("a node needs a cost for each of the " + this.tiers + " tiers");
+		if (Float.isInfinite(costs[0]) || Float.isNaN(costs[0]))
+			throw new IllegalArgumentException("every node must be able to run on the device");
+
+		if ((this.size + 1) * this.tiers > this.nodeCosts.length)
+			this.nodeCosts = Arrays.copyOf(this.nodeCosts, 2 * this.nodeCosts.length);
+		System.arraycopy(costs, 0, this.nodeCosts, this.size * this.tiers, this.tiers);
+		return this.size++;
+	}
+
+	public void addEdge(int u, int v, float cost) {
+		if (u < 0 || u >= this.size || v < 0 || v >= this.size)
+			throw new IndexOutOfBoundsException("no node " + (u < 0 || u >= this.size ? u : v));
+
+		if (this.edgeCount == this.edgeSource.length) {
+			int capacity = 2 * this.edgeCount;
+			this.edgeSource = Arrays.copyOf(this.edgeSource, capacity);
+			this.edgeTarget = Arrays.copyOf(this.edgeTarget, capacity);
+			this.edgeCosts = Arrays.copyOf(this.edgeCosts, capacity);
+		}
+		this.edgeSource[this.edgeCount] = u;
+		this.edgeTarget[this.edgeCount] = v;
+		this.edgeCosts[this.edgeCount] = cost;
+		this.edgeCount++;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int tiers() {
+		return this.tiers;
+	}
+
+	public Result optimize(TieredCostModel model) {
+		int size = this.size, tiers = this.tiers;
+		float[] costs = new float[size * tiers];
+		for (int v = 0; v < size; v++) {
+			for (int tier = 0; tier < tiers; tier++) {
+				costs[v * tiers + tier] = model.nodeCost(tier, this.nodeCosts[v * tiers + tier]);
+			}
+		}
+
+		int[] assignment = new int[size];
+		double originalCost = cost(model, costs, assignment);
+		double cost = originalCost;
+		boolean improved = true;
+		while (improved) {
+			improved = false;
+			for (int tier = 0; tier < tiers; tier++) {
+				int[] expanded = expand(model, costs, assignment, tier);
+				if (expanded == null)
+					continue;
+
+				double expandedCost = cost(model, costs, expanded);
+				if (expandedCost < cost - 1e-6 * Math.max(1, Math.abs(cost))) {
+					assignment = expanded;
+					cost = expandedCost;
+					improved = true;
+				}
+			}
+		}
+
+		Result result = new Result(assignment);
+		result.cost = (float) cost;
+		result.originalCost = (float) originalCost;
+		result.savings = 1 - (result.cost / result.originalCost);
+		return result;
+	}
+
+	/**
+	 * @return the cost of an assignment of the nodes to tiers
+	 */
+	double cost(TieredCostModel model, float[] costs, int[] assignment) {
+		double sum = 0;
+		for (int v = 0; v < this.size; v++) {
+			sum += costs[v * this.tiers + assignment[v]];
+		}
+		for (int e = 0; e < this.edgeCount; e++) {
+			int from = assignment[this.edgeSource[e]], to = assignment[this.edgeTarget[e]];
+			if (from != to)
+				sum += model.transmissionCost(from, to, this.edgeCosts[e]);
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Find the cheapest assignment in which each node either stays where it is or moves to the
+	 * given tier.
+	 *
+	 * Each node is a vertex in a network whose source side keeps its tier and whose sink side
+	 * moves. An edge between nodes u and v on other tiers costs A where they are, B when only v
+	 * moves and C when only u moves. That's A for u staying, C for u moving, -C for v moving and
+	 * B + C - A more when u stays and v moves, which is the arc from u to v.
+	 *
+	 * @return the new assignment or null if no node can move
+	 */
+	int[] expand(TieredCostModel model, float[] costs, int[] assignment, int tier) {
+		int size = this.size, tiers = this.tiers;
+		float[] stay = new float[size], move = new float[size];
+		boolean movable = false;
+		for (int v = 0; v < size; v++) {
+			stay[v] = costs[v * tiers + assignment[v]];
+			move[v] = assignment[v] == tier ? stay[v] : costs[v * tiers + tier];
+			movable |= assignment[v] != tier && !Float.isInfinite(move[v]);
+		}
+		if (!movable)
+			return null;
+
+		float[] arcs = new float[this.edgeCount];
+		for (int e = 0; e < this.edgeCount; e++) {
+			int u = this.edgeSource[e], v = this.edgeTarget[e];
+			int from = assignment[u], to = assignment[v];
+			float cost = this.edgeCosts[e];
+			if (u == v || (from == tier && to == tier))
+				continue;
+
+			if (from == tier) {
+				stay[v] += transmissionCost(model, tier, to, cost);
+			} else if (to == tier) {
+				stay[u] += transmissionCost(model, from, tier, cost);
+			} else {
+				float a = from == to ? 0 : transmissionCost(model, from, to, cost);
+				float b = transmissionCost(model, from, tier, cost);
+				float c = transmissionCost(model, tier, to, cost);
+				stay[u] += a;
+				move[u] += c;
+				move[v] -= c;
+				// without the triangle inequality this is only an approximation of the move
+				arcs[e] = Math.max(0, b + c - a);
+			}
+		}
+
+		// the nodes are 0 to size - 1 and a virtual source comes after them
+		MaxFlow flow = new MaxFlow(size + 1, size);
+		for (int pass = 0; pass < 2; pass++) {
+			for (int v = 0; v < size; v++) {
+				if (pass == 0)
+					flow.countNode(v, stay[v], move[v]);
+				else
+					flow.addNode(v, stay[v], move[v]);
+			}
+			for (int e = 0; e < this.edgeCount; e++) {
+				if (arcs[e] <= 0)
+					continue;
+
+				if (pass == 0)
+					flow.countEdge(this.edgeSource[e], this.edgeTarget[e]);
+				else
+					flow.addArc(this.edgeSource[e], this.edgeTarget[e], arcs[e], 0);
+			}
+
+			if (pass == 0)
+				flow.allocate(Buffers.HEAP);
+		}
+		flow.run();
+
+		int[] expanded = assignment.clone();
+		for (int v = 0; v < size; v++) {
+			if (flow.isRemote(v))
+				expanded[v] = tier;
+		}
+
+		return expanded;
+	}
+
+	static float transmissionCost(TieredCostModel model, int from, int to, float cost) {
+		float result = model.transmissionCost(from, to, cost);
+		if (Float.isInfinite(result) || Float.isNaN(result))
+			throw new IllegalArgumentException("the transmission cost between tiers " + from + " and " + to
+					+ " must be a number");
+
+		return result;
+	}
+
+	public static class Result {
+		/** tier of each node */
+		final int[] tiers;
+
+		/** cost of performing all computation on the device */
+		float originalCost;
+		/** cost when using the assignment of this object */
+		float cost;
+		/** saved costs relative to performing computation on the device, between 0 and 1 */
+		float savings;
+
+		Result(int[] tiers) {
+			this.tiers = tiers;
+		}
+
+		/**
+		 * @return the tier the node should run on
+		 */
+		public int tier(int node) {
+			return this.tiers[node];
+		}
+	}
+}
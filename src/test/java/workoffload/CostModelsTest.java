@@ -0,0 +1,75 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CostModelsTest {
+    static final float[] COSTS = { 0, 1, 2.5f, 3, 1e-3f, 1e6f, 7.25f };
+
+    /**
+     * The bulk methods must give the same results as the scalar ones, to the last bit
+     */
+    void check(CostModel model) {
+        model.setNodes(TestGraphs.paperGraph());
+        float[] local = new float[COSTS.length], remote = new float[COSTS.length];
+        float[] transmission = COSTS.clone();
+        CostModels.localCosts(model, COSTS, local, COSTS.length);
+        CostModels.remoteCosts(model, COSTS, remote, COSTS.length);
+        CostModels.transmissionCosts(model, transmission, transmission, COSTS.length);
+        for (int i = 0; i < COSTS.length; i++) {
+            Assert.assertEquals(Float.floatToIntBits(model.localCost(COSTS[i])), Float.floatToIntBits(local[i]));
+            Assert.assertEquals(Float.floatToIntBits(model.remoteCost(COSTS[i])), Float.floatToIntBits(remote[i]));
+            Assert.assertEquals(Float.floatToIntBits(model.transmissionCost(COSTS[i])), Float.floatToIntBits(transmission[i]));
+        }
+    }
+
+    @Test
+    public void testBulk() {
+        List<CostModel> models = Arrays.asList(
+            CostModels.responseTime(),
+            CostModels.energyConsumption(0.9f, 0.3f, 1.3f),
+            CostModels.weightedTimeAndEnergy(0.9f, 0.3f, 1.3f, 0.3f),
+            CostModels.weightedTimeAndEnergy(0.9f, 0.3f, 1.3f, 1f),
+            CostModels.scaledTransmission(CostModels.weightedTimeAndEnergy(0.9f, 0.3f, 1.3f, 0.7f), 1.5f));
+        for (CostModel model : models) {
+            Assert.assertTrue(model instanceof BulkCostModel);
+            check(model);
+        }
+    }
+
+    @Test
+    public void testScalarOnly() {
+        CostModel model = new CostModel() {
+            public void setNodes(Offload.Node[] nodes) {
+                // noop
+            }
+
+            public float localCost(float cost) {
+                return cost + 1;
+            }
+
+            public float remoteCost(float cost) {
+                return cost / 2;
+            }
+
+            public float transmissionCost(float cost) {
+                return cost * cost;
+            }
+        };
+        check(model);
+        check(CostModels.scaledTransmission(model, 2));
+    }
+
+    @Test
+    public void testNaN() {
+        // without any local cost, the weighted model divides by 0
+        CostModel model = CostModels.weightedTimeAndEnergy(0.9f, 0.3f, 1.3f, 0.5f);
+        model.setNodes(new Offload.Node[] { new Offload.Node(0, 0, false) });
+        float[] costs = { 0 };
+        CostModels.localCosts(model, costs, costs, 1);
+        Assert.assertEquals(Float.MAX_VALUE, costs[0], 0);
+    }
+}
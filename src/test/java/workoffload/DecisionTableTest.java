@@ -0,0 +1,45 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class DecisionTableTest {
+    Offload.Node a, b, c, d, e, f;
+
+    @Before
+    public void setUp() {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        a = nodes[0];
+        b = nodes[1];
+        c = nodes[2];
+        d = nodes[3];
+        e = nodes[4];
+        f = nodes[5];
+    }
+
+    @Test
+    public void testLookup()
+        throws Exception {
+        Offload offload = new Offload(a, b, c, d, e, f);
+        DecisionTable table = DecisionTable.build(offload, CostModels.responseTime(), 0, 10);
+        Assert.assertTrue(table.size() > 1);
+
+        // without any transmission costs everything is offloaded
+        Assert.assertEquals(new HashSet(Arrays.asList(a)), table.lookup(0).local);
+        Assert.assertEquals(9, table.cost(0), 0.001);
+
+        Assert.assertEquals(new HashSet(Arrays.asList(a, b)), table.lookup(1).local);
+        Assert.assertEquals(new HashSet(Arrays.asList(c, d, e, f)), table.lookup(1).remote);
+        Assert.assertEquals(14, table.cost(1), 0.001);
+
+        for (float factor = 0; factor <= 10; factor += 0.25f) {
+            Offload.Result result = new Offload(a, b, c, d, e, f)
+                    .optimize(CostModels.scaledTransmission(CostModels.responseTime(), factor));
+            Assert.assertEquals(result.cost, table.cost(factor), 0.001);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class DotExporterTest {
+    @Test
+    public void testResult()
+        throws Exception {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        Offload.Result result = new Offload(nodes).optimize(CostModels.responseTime());
+        String dot = DotExporter.fromResult(result);
+        Assert.assertTrue(dot.startsWith("graph workoffload {\n"
+            + "0 [label=\"0.00/0.00\" fillcolor=\"#66CCFF\" style=filled];\n"
+            + "1 [label=\"3.00/1.00\" fillcolor=\"#66CCFF\" style=filled];\n"
+            + "2 [label=\"3.00/1.00\" fillcolor=\"#FF3300\" style=filled];\n"));
+        Assert.assertTrue(dot.contains("\n0 -- 1;\n1 -- 2;\n1 -- 3;\n2 -- 3;\n"));
+        Assert.assertTrue(dot.endsWith("4 -- 5;\n}"));
+
+        // only b and its edges to c and d cross the cut
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DotExporter.writeResult(out, result, true);
+        Assert.assertEquals("graph workoffload {\n"
+            + "1 [label=\"3.00/1.00\" fillcolor=\"#66CCFF\" style=filled];\n"
+            + "2 [label=\"3.00/1.00\" fillcolor=\"#FF3300\" style=filled];\n"
+            + "3 [label=\"6.00/2.00\" fillcolor=\"#FF3300\" style=filled];\n"
+            + "1 -- 2;\n"
+            + "1 -- 3;\n"
+            + "}", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testNodes()
+        throws Exception {
+        GraphBuilder builder = new GraphBuilder();
+        builder.addNode(0, 0, false);
+        for (int i = 1; i < 40; i++) {
+            builder.addNode(i + 0.125f, -0.5f, true);
+            builder.addEdge(i - 1, i, 1);
+        }
+        builder.build();
+        Offload.Node[] nodes = new Offload.Node[40];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = builder.node(i);
+        }
+
+        String dot = DotExporter.fromNodes(nodes);
+        Assert.assertTrue(dot.contains("\n39 [label=\"39.13/-0.50\"];\n"));
+        Assert.assertTrue(dot.endsWith("\n38 -- 39;\n}"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DotExporter.writeNodes(out, nodes);
+        Assert.assertEquals(dot, out.toString("UTF-8"));
+    }
+}
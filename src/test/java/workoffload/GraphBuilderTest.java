@@ -0,0 +1,71 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GraphBuilderTest {
+    /**
+     * The graph of OffloadTest.testPaperGraph, with some edges given twice or backwards
+     */
+    GraphBuilder paperGraph() {
+        GraphBuilder builder = new GraphBuilder(2, 2);
+        int a = builder.addNode(0, 0, false);
+        int b = builder.addNode(3, 1, true);
+        int c = builder.addNode(3, 1, true);
+        int d = builder.addNode(6, 2, true);
+        int e = builder.addNode(6, 2, true);
+        int f = builder.addNode(9, 3, true);
+
+        builder.addEdge(a, b, 1);
+        builder.addEdge(b, a, 10);
+        builder.addEdge(c, c, 5);
+        builder.addEdges(new int[] { b, b, d, c }, new int[] { c, d, c, e }, new float[] { 1, 2, 1, 1 });
+        builder.addEdge(d, e, 2);
+        builder.addEdge(f, d, 7);
+        builder.addEdge(d, f, 1);
+        builder.addEdge(e, f, 1);
+        return builder;
+    }
+
+    @Test
+    public void testBuild()
+        throws Exception {
+        GraphBuilder builder = paperGraph();
+        Offload offload = builder.build();
+        Assert.assertEquals(8, offload.edges.length);
+
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        Assert.assertEquals(27, result.originalCost, 0);
+        Assert.assertEquals(14, result.cost, 0);
+        Assert.assertFalse(result.isRemote(1));
+        Assert.assertTrue(result.remote.contains(builder.node(2)));
+
+        // the edges can be changed through the nodes
+        builder.node(0).setEdge(builder.node(1), 0);
+        Assert.assertEquals(9, offload.optimize(CostModels.responseTime()).cost, 0);
+    }
+
+    @Test
+    public void testSameAsNodes()
+        throws Exception {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        Offload.Result expected = new Offload(nodes).optimize(CostModels.energyConsumption(0.9f, 0.3f, 1.3f));
+        Offload.Result result = paperGraph().build().optimize(CostModels.energyConsumption(0.9f, 0.3f, 1.3f));
+        Assert.assertEquals(expected.cost, result.cost, 0);
+        Assert.assertEquals(expected.partition, result.partition);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testUnknownNode() {
+        GraphBuilder builder = new GraphBuilder();
+        builder.addNode(0, 0, false);
+        builder.addEdge(0, 1, 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuiltTwice() {
+        GraphBuilder builder = paperGraph();
+        builder.build();
+        builder.build();
+    }
+}
@@ -0,0 +1,110 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+import java.util.Collections;
+
+public class GraphSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOffload()
+        throws Exception {
+        Offload offload = new Offload(TestGraphs.paperGraph());
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        File file = folder.newFile();
+        GraphSnapshot.write(file, offload, Collections.singletonMap("time", result));
+
+        GraphSnapshot snapshot = GraphSnapshot.load(file);
+        Assert.assertEquals(6, snapshot.size());
+        Assert.assertEquals(8, snapshot.edgeCount());
+        Assert.assertEquals(Collections.singleton("time"), snapshot.results());
+        Assert.assertEquals("{2, 3, 4, 5}", snapshot.remote("time").toString());
+        Assert.assertNull(snapshot.remote("energy"));
+
+        Offload.Result saved = snapshot.result("time");
+        Assert.assertEquals(14, saved.cost, 0);
+        Assert.assertEquals(27, saved.originalCost, 0);
+        Assert.assertEquals(4, saved.remote.size());
+
+        // the loaded graph optimizes the same as the original
+        Offload loaded = snapshot.offload();
+        Offload.Result again = loaded.optimize(CostModels.responseTime());
+        Assert.assertEquals(14, again.cost, 0);
+        Assert.assertEquals(saved.remote, again.remote);
+        Assert.assertEquals(9, loaded.optimize(CostModels.energyConsumption(0.9f, 0.3f, 1.3f)).cost, 0);
+
+        // and can be changed like any other
+        loaded.userNodes[0].edges.get(0).cost = 0;
+        Assert.assertEquals(9, loaded.optimize(CostModels.responseTime()).cost, 0);
+    }
+
+    @Test
+    public void testOffHeapGraph()
+        throws Exception {
+        OffHeapGraph graph = OffHeapGraph.allocate(6, 8);
+        new OffHeapGraphTest().fill(graph);
+        File file = folder.newFile();
+        GraphSnapshot.write(file, graph);
+
+        GraphSnapshot snapshot = GraphSnapshot.load(file);
+        Assert.assertTrue(snapshot.results().isEmpty());
+        BitSet remote = new BitSet();
+        Assert.assertEquals(14, snapshot.graph().optimize(CostModels.responseTime(), remote), 0);
+        Assert.assertEquals("{2, 3, 4, 5}", remote.toString());
+        Assert.assertEquals(14, snapshot.offload().optimize(CostModels.responseTime()).cost, 0);
+    }
+
+    @Test
+    public void testSelfLoops()
+        throws Exception {
+        OffHeapGraph graph = OffHeapGraph.allocate(6, 10);
+        new OffHeapGraphTest().fill(graph);
+        graph.addEdge(2, 2, 5);
+        graph.addEdge(5, 5, 5);
+        File file = folder.newFile();
+        GraphSnapshot.write(file, graph);
+
+        GraphSnapshot snapshot = GraphSnapshot.load(file);
+        Assert.assertEquals(10, snapshot.edgeCount());
+        Offload offload = snapshot.offload();
+        Assert.assertEquals(8, offload.edges.length);
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        Assert.assertEquals(14, result.cost, 0);
+        Assert.assertEquals("{2, 3, 4, 5}", result.partition.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void testEdgeOutsideGraph()
+        throws Exception {
+        OffHeapGraph graph = OffHeapGraph.allocate(6, 8);
+        new OffHeapGraphTest().fill(graph);
+        File file = folder.newFile();
+        GraphSnapshot.write(file, graph);
+
+        // point the target of the last edge past the nodes
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(GraphSnapshot.HEADER + GraphSnapshot.nodeBytes(6) + 4 * 8 + 4 * 7);
+        raf.writeInt(Integer.reverseBytes(6));
+        raf.close();
+        GraphSnapshot.load(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotASnapshot()
+        throws Exception {
+        File file = folder.newFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeBytes("not a graph snapshot");
+        raf.close();
+        GraphSnapshot.load(file);
+    }
+}
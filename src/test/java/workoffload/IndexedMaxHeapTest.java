@@ -0,0 +1,76 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexedMaxHeapTest {
+    @Test
+    public void testOrder()
+        throws Exception {
+        IndexedMaxHeap heap = new IndexedMaxHeap(6);
+        float[] keys = { 3, 9, 1, 7, 5, 2 };
+        for (int v = 0; v < keys.length; v++) {
+            heap.put(v, keys[v]);
+        }
+
+        int[] order = { 1, 3, 4, 0, 5, 2 };
+        for (int v : order) {
+            Assert.assertFalse(heap.isEmpty());
+            Assert.assertEquals(v, heap.pop());
+            Assert.assertFalse(heap.contains(v));
+        }
+        Assert.assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testTies()
+        throws Exception {
+        // equal keys come out by lowest index, whatever order they went in
+        IndexedMaxHeap heap = new IndexedMaxHeap(5);
+        heap.put(3, 1);
+        heap.put(4, 2);
+        heap.put(0, 1);
+        heap.put(2, 2);
+        heap.put(1, 1);
+
+        int[] order = { 2, 4, 0, 1, 3 };
+        for (int v : order) {
+            Assert.assertEquals(v, heap.pop());
+        }
+    }
+
+    @Test
+    public void testChangeKey()
+        throws Exception {
+        IndexedMaxHeap heap = new IndexedMaxHeap(4);
+        for (int v = 0; v < 4; v++) {
+            heap.put(v, v);
+        }
+
+        // putting a vertex again changes its key instead of adding it twice
+        heap.put(0, 10);
+        Assert.assertEquals(10, heap.key(0), 0);
+        heap.put(3, 0.5f);
+        heap.put(2, 1);
+        Assert.assertEquals(0, heap.pop());
+        Assert.assertEquals(1, heap.pop());
+        Assert.assertEquals(2, heap.pop());
+        Assert.assertEquals(3, heap.pop());
+        Assert.assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testClear()
+        throws Exception {
+        IndexedMaxHeap heap = new IndexedMaxHeap(3);
+        heap.put(0, 1);
+        heap.put(2, 3);
+        heap.clear();
+        Assert.assertTrue(heap.isEmpty());
+        Assert.assertFalse(heap.contains(0));
+        Assert.assertFalse(heap.contains(2));
+
+        heap.put(1, 2);
+        Assert.assertEquals(1, heap.pop());
+    }
+}
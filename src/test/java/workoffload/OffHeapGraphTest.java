@@ -0,0 +1,60 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+public class OffHeapGraphTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Copy TestGraphs.paperGraph, its edge 0 connects the first two nodes
+     */
+    void fill(OffHeapGraph graph) {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        List<Offload.Node> ids = Arrays.asList(nodes);
+        for (int v = 0; v < nodes.length; v++) {
+            graph.setNode(v, nodes[v].localCost, nodes[v].remoteCost, nodes[v].offloadable);
+        }
+        for (int v = 0; v < nodes.length; v++) {
+            for (Offload.Edge edge : nodes[v].edges) {
+                int w = ids.indexOf(edge.node);
+                if (w > v)
+                    graph.addEdge(v, w, edge.cost);
+            }
+        }
+    }
+
+    void check(OffHeapGraph graph) {
+        BitSet remote = new BitSet();
+        Assert.assertEquals(14, graph.optimize(CostModels.responseTime(), remote), 0);
+        Assert.assertEquals("{2, 3, 4, 5}", remote.toString());
+
+        // with a free link to the first node, only it stays local
+        graph.setEdgeCost(0, 0);
+        remote.clear();
+        Assert.assertEquals(9, graph.optimize(CostModels.responseTime(), remote), 0);
+        Assert.assertEquals("{1, 2, 3, 4, 5}", remote.toString());
+    }
+
+    @Test
+    public void testDirect() {
+        OffHeapGraph graph = OffHeapGraph.allocate(6, 8);
+        fill(graph);
+        check(graph);
+    }
+
+    @Test
+    public void testMapped()
+        throws Exception {
+        OffHeapGraph graph = OffHeapGraph.map(folder.getRoot(), 6, 8);
+        fill(graph);
+        check(graph);
+    }
+}
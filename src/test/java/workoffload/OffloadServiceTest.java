@@ -0,0 +1,143 @@
+package workoffload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OffloadServiceTest {
+    static CostModel[] models() {
+        return new CostModel[] {
+            CostModels.responseTime(),
+            CostModels.energyConsumption(0.9f, 0.3f, 1.3f),
+            CostModels.scaledTransmission(CostModels.responseTime(), 2),
+            CostModels.scaledTransmission(CostModels.responseTime(), 0.5f),
+        };
+    }
+
+    @Test
+    public void testConcurrentRequests()
+        throws Exception {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        Offload offload = new Offload(nodes);
+        CompiledGraph graph = CompiledGraph.compile(offload);
+
+        OffloadService service = new OffloadService(4, 64);
+        List<Future<Offload.Result>> futures = new ArrayList<Future<Offload.Result>>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(service.submit(graph, models()[i % 4]));
+        }
+
+        CostModel[] models = models();
+        for (int i = 0; i < futures.size(); i++) {
+            Offload.Result result = futures.get(i).get();
+            Offload.Result expected = offload.optimize(models[i % 4]);
+            Assert.assertEquals(expected.cost, result.cost, 0);
+            Assert.assertEquals(expected.remote, result.remote);
+            Assert.assertTrue(result.stats.queueNanos >= 0);
+        }
+
+        service.shutdown();
+        Assert.assertTrue(service.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(200, service.completed());
+        Assert.assertEquals(0, service.failed());
+        Assert.assertTrue(service.maxLatencyNanos() >= service.averageLatencyNanos());
+    }
+
+    @Test
+    public void testSharedModel()
+        throws Exception {
+        // the model keeps the sum of the local costs of its graph, so each graph gets one, which
+        // all the requests for that graph share
+        Offload.Node[] small = TestGraphs.paperGraph();
+        Offload.Node[] paper = TestGraphs.paperGraph();
+        Offload.Node[] large = Arrays.copyOf(paper, 7);
+        large[6] = new Offload.Node(300, 100);
+        large[5].setEdge(large[6], 1);
+        Offload smallOffload = new Offload(small), largeOffload = new Offload(large);
+        CostModel[] models = {
+            CostModels.weightedTimeAndEnergy(0.9f, 0.3f, 1.3f, 0.5f),
+            CostModels.weightedTimeAndEnergy(0.9f, 0.3f, 1.3f, 0.5f),
+        };
+        float[] costs = { smallOffload.optimize(models[0]).cost, largeOffload.optimize(models[1]).cost };
+        CompiledGraph[] graphs = { CompiledGraph.compile(smallOffload), CompiledGraph.compile(largeOffload) };
+
+        OffloadService service = new OffloadService(8, 1024);
+        List<Future<Offload.Result>> futures = new ArrayList<Future<Offload.Result>>();
+        for (int i = 0; i < 4000; i++) {
+            futures.add(service.submit(graphs[i % 2], models[i % 2]));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals(costs[i % 2], futures.get(i).get().cost, 0);
+        }
+        service.shutdown();
+    }
+
+    @Test
+    public void testEdgeCosts()
+        throws Exception {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        CompiledGraph graph = CompiledGraph.compile(new Offload(nodes));
+        Assert.assertEquals(8, graph.edgeCount());
+
+        // changing the Offload's graph doesn't change the compiled one
+        nodes[0].setEdge(nodes[1], 100);
+        Assert.assertEquals(14, graph.optimize(CostModels.responseTime()).cost, 0);
+
+        // the same as scaling the transmission costs
+        float[] costs = new float[graph.edgeCount()];
+        for (int k = 0; k < costs.length; k++) {
+            costs[k] = 3 * graph.edgeCost(k);
+        }
+        Offload.Result result = graph.optimize(CostModels.responseTime(), costs);
+        Offload.Result expected = new Offload(TestGraphs.paperGraph())
+            .optimize(CostModels.scaledTransmission(CostModels.responseTime(), 3));
+        Assert.assertEquals(expected.cost, result.cost, 0);
+        Assert.assertNotEquals(14, result.cost, 0);
+        Assert.assertEquals(expected.remote.size(), result.remote.size());
+        Assert.assertSame(nodes[0], result.local.iterator().next());
+
+        try {
+            graph.optimize(CostModels.responseTime(), new float[3]);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBackpressure()
+        throws Exception {
+        CompiledGraph graph = CompiledGraph.compile(new Offload(TestGraphs.paperGraph()));
+        final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        CostModel blocking = new CostModels.ResponseTime() {
+            @Override
+            public void setNodes(Offload.Node[] nodes) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        OffloadService service = new OffloadService(2, 1);
+        Future<Offload.Result> first = service.trySubmit(graph, blocking, null);
+        Assert.assertNotNull(first);
+        started.await();
+        Assert.assertNull(service.trySubmit(graph, CostModels.responseTime(), null));
+        Assert.assertEquals(1, service.rejected());
+
+        release.countDown();
+        Assert.assertEquals(14, first.get().cost, 0);
+        Assert.assertEquals(14, service.submit(graph, CostModels.responseTime()).get().cost, 0);
+        Assert.assertEquals(2, service.completed());
+        service.shutdown();
+    }
+}
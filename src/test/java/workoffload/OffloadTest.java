@@ -4,8 +4,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.Assert;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 
 public class OffloadTest {
@@ -27,6 +33,19 @@ public class OffloadTest {
         e.setEdge(f, 4);
     }
 
+    /**
+     * Use the graph of TestGraphs.paperGraph for a to f
+     */
+    void paperGraph() {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        a = nodes[0];
+        b = nodes[1];
+        c = nodes[2];
+        d = nodes[3];
+        e = nodes[4];
+        f = nodes[5];
+    }
+
     @Test
     public void testLinear()
         throws Exception {
@@ -37,6 +56,20 @@ public class OffloadTest {
         Assert.assertEquals(new HashSet(Arrays.asList(e, f)), result.remote);
     }
 
+    @Test
+    public void testLinearReduced()
+        throws Exception {
+        // every offloadable node of a chain can be removed before looking for the cut
+        Offload offload = new Offload(a, b, c, d, e, f);
+        offload.setReductions(true);
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+
+        Assert.assertEquals(new HashSet(Arrays.asList(a, b, c, d)), result.local);
+        Assert.assertEquals(new HashSet(Arrays.asList(e, f)), result.remote);
+        Assert.assertEquals(28, result.cost, 0);
+        Assert.assertEquals(1, offload.activeNodes);
+    }
+
     @Test
     public void testResultComparison() {
         Offload.Result dummyResult = new Offload.Result();
@@ -105,6 +138,30 @@ public class OffloadTest {
         Assert.assertEquals(0.555, result.savings, 0.001);
     }
 
+    @Test
+    public void testMergedNodesStayLocal()
+        throws Exception {
+        // e gets merged into c before the best cut is found, it must stay
+        // local along with c.
+        a = new Offload.Node(0, 0, false);
+        b = new Offload.Node(9, 1);
+        c = new Offload.Node(9, 2);
+        d = new Offload.Node(1, 3);
+        e = new Offload.Node(1, 9);
+
+        a.setEdge(b, 5);
+        a.setEdge(c, 6);
+        b.setEdge(d, 1);
+        c.setEdge(e, 2);
+
+        Offload offload = new Offload(a, b, c, d, e);
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        Assert.assertEquals(new HashSet(Arrays.asList(a, c, e)), result.local);
+        Assert.assertEquals(new HashSet(Arrays.asList(b, d)), result.remote);
+        Assert.assertEquals(20, result.originalCost, 0);
+        Assert.assertEquals(19, result.cost, 0);
+    }
+
     @Test
     public void TestEdgeUpdate()
         throws Exception {
@@ -141,4 +198,417 @@ public class OffloadTest {
         Assert.assertEquals(10, result.cost, 0);
         Assert.assertEquals(0.629, result.savings, 0.001);
     }
+
+    @Test
+    public void testIncrementalEdgeUpdate()
+        throws Exception {
+        paperGraph();
+
+        CostModel model = CostModels.responseTime();
+        Offload offload = new Offload(a, b, c, d, e, f);
+        offload.setIncremental(true);
+        Offload.Result result = offload.optimize(model);
+        Assert.assertEquals(new HashSet(Arrays.asList(a, b)), result.local);
+        Assert.assertEquals(14, result.cost, 0);
+
+        // nothing changed
+        Assert.assertSame(result, offload.optimize(model));
+
+        // a cheaper edge inside the local set needs the full algorithm
+        a.setEdge(b, 1);
+        result = offload.optimize(model);
+        Assert.assertEquals(new HashSet(Arrays.asList(a)), result.local);
+        Assert.assertEquals(new HashSet(Arrays.asList(b, c, d, e, f)), result.remote);
+        Assert.assertEquals(10, result.cost, 0);
+
+        // a more expensive edge inside the remote set and a cheaper one across
+        // the cut keep the partition
+        d.setEdge(e, 4);
+        a.setEdge(b, 0);
+        result = offload.optimize(model);
+        Assert.assertEquals(new HashSet(Arrays.asList(a)), result.local);
+        Assert.assertEquals(new HashSet(Arrays.asList(b, c, d, e, f)), result.remote);
+        Assert.assertEquals(9, result.cost, 0);
+        Assert.assertEquals(0.666, result.savings, 0.001);
+
+        // a new edge means compiling the graph again
+        b.setEdge(f, 3);
+        result = offload.optimize(model);
+        Assert.assertEquals(new HashSet(Arrays.asList(b, c, d, e, f)), result.remote);
+        Assert.assertEquals(9, result.cost, 0);
+    }
+
+    @Test
+    public void testParallel()
+        throws Exception {
+        // Repeat a small pattern so that we get a graph large enough for the
+        // parallel tasks to split their work.
+        Offload.Node[] nodes = new Offload.Node[600];
+        for (int i = 0; i < nodes.length; i += 5) {
+            nodes[i] = new Offload.Node(5, 4, i == 0);
+            nodes[i + 1] = new Offload.Node(3, 2, i == 0);
+            nodes[i + 2] = new Offload.Node(6, 3);
+            nodes[i + 3] = new Offload.Node(7, 4);
+            nodes[i + 4] = new Offload.Node(7, 3);
+
+            nodes[i].setEdge(nodes[i + 1], 2);
+            nodes[i].setEdge(nodes[i + 2], 1);
+            nodes[i + 1].setEdge(nodes[i + 3], 5);
+            nodes[i + 2].setEdge(nodes[i + 3], 8);
+            nodes[i + 2].setEdge(nodes[i + 4], 7);
+            if (i > 0) {
+                nodes[i - 2].setEdge(nodes[i + 1], 5);
+                nodes[i - 1].setEdge(nodes[i], 5);
+            }
+        }
+
+        Offload.Result expected = new Offload(nodes).optimize(CostModels.responseTime());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Offload offload = new Offload(nodes);
+        offload.setParallel(pool);
+        offload.parallelThreshold = 1;
+        // the graph is far too sparse to scan in parallel by default
+        offload.internalizeNodes(CostModels.responseTime());
+        Assert.assertFalse(offload.parallelPhase());
+        offload.parallelDensity = Integer.MAX_VALUE;
+        Assert.assertTrue(offload.parallelPhase());
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        pool.shutdown();
+        Assert.assertEquals(expected.local, result.local);
+        Assert.assertEquals(expected.remote, result.remote);
+        Assert.assertEquals(expected.cost, result.cost, 0);
+    }
+
+    @Test
+    public void testOptimizeAll()
+        throws Exception {
+        paperGraph();
+
+        List<CostModel> models = Arrays.asList(CostModels.responseTime(),
+                CostModels.energyConsumption(0.9f, 0.3f, 1.3f),
+                CostModels.weightedTimeAndEnergy(0.9f, 0.3f, 1.3f, 0.5f));
+        float[] costs = {14, 9, 0.444f};
+
+        Offload offload = new Offload(a, b, c, d, e, f);
+        List<Offload.Result> results = offload.optimizeAll(models);
+        Assert.assertEquals(3, results.size());
+        for (int i = 0; i < costs.length; i++) {
+            Assert.assertEquals(new HashSet(Arrays.asList(a, b)), results.get(i).local);
+            Assert.assertEquals(costs[i], results.get(i).cost, 0.001);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        offload.setParallel(pool);
+        results = offload.optimizeAll(models);
+        pool.shutdown();
+        for (int i = 0; i < costs.length; i++) {
+            Assert.assertEquals(new HashSet(Arrays.asList(c, d, e, f)), results.get(i).remote);
+            Assert.assertEquals(costs[i], results.get(i).cost, 0.001);
+        }
+    }
+
+    @Test
+    public void testComponents()
+        throws Exception {
+        // a splits the graph into {b, d} and {c, e}, f and g are not
+        // connected to it at all.
+        a = new Offload.Node(0, 0, false);
+        b = new Offload.Node(9, 1);
+        c = new Offload.Node(9, 2);
+        d = new Offload.Node(1, 3);
+        e = new Offload.Node(1, 9);
+        f = new Offload.Node(4, 1);
+        Offload.Node g = new Offload.Node(4, 1);
+
+        a.setEdge(b, 5);
+        a.setEdge(c, 6);
+        b.setEdge(d, 1);
+        c.setEdge(e, 2);
+        f.setEdge(g, 1);
+
+        Offload offload = new Offload(a, b, c, d, e, f, g);
+        offload.setComponents(true);
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        Assert.assertEquals(new HashSet(Arrays.asList(a, c, e)), result.local);
+        Assert.assertEquals(new HashSet(Arrays.asList(b, d, f, g)), result.remote);
+        Assert.assertEquals(28, result.originalCost, 0);
+        Assert.assertEquals(21, result.cost, 0);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        offload.setParallel(pool);
+        result = offload.optimize(CostModels.responseTime());
+        pool.shutdown();
+        Assert.assertEquals(new HashSet(Arrays.asList(b, d, f, g)), result.remote);
+        Assert.assertEquals(21, result.cost, 0);
+
+        // the solver's exception reaches the caller, not an ExecutionException
+        pool = new ForkJoinPool(2);
+        offload.setParallel(pool);
+        offload.setSolver(new Solver() {
+            public float solve(Offload offload, BitSet remote) {
+                throw new IllegalStateException("broken solver");
+            }
+        });
+        try {
+            offload.optimize(CostModels.responseTime());
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+            // expected
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testMaxFlow()
+        throws Exception {
+        Offload offload = new Offload(a, b, c, d, e, f);
+        offload.setSolver(Solvers.maxFlow());
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        Offload.Result expected = new Offload(a, b, c, d, e, f).optimize(CostModels.responseTime());
+        Assert.assertEquals(expected.local, result.local);
+        Assert.assertEquals(expected.cost, result.cost, 0);
+
+        // MCOP always offloads something, even when keeping everything
+        // local is cheaper.
+        a = new Offload.Node(0, 0, false);
+        b = new Offload.Node(1, 5);
+        a.setEdge(b, 1);
+
+        offload = new Offload(a, b);
+        offload.setSolver(Solvers.maxFlow());
+        result = offload.optimize(CostModels.responseTime());
+        Assert.assertEquals(new HashSet(Arrays.asList(a, b)), result.local);
+        Assert.assertEquals(1, result.cost, 0);
+    }
+
+    @Test
+    public void testIntegerWeights()
+        throws Exception {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        Offload offload = new Offload(nodes);
+        // only when asked for
+        offload.optimize(CostModels.responseTime());
+        Assert.assertNull(offload.buckets);
+
+        offload.setIntegerCosts(true);
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        Assert.assertNotNull(offload.buckets);
+        Assert.assertEquals(14, result.cost, 0);
+
+        // the same costs as floats take the usual path
+        Offload.Result floats = offload.optimize(CostModels.energyConsumption(1, 1, 1));
+        Assert.assertNull(offload.buckets);
+        Assert.assertEquals(result.cost, floats.cost, 0);
+        Assert.assertEquals(result.partition, floats.partition);
+
+        GraphBuilder builder = new GraphBuilder();
+        builder.addNode(0, 0, false);
+        builder.addNode(3.5f, 1, true);
+        builder.addEdge(0, 1, 1);
+        offload = builder.build();
+        offload.setIntegerCosts(true);
+        Assert.assertEquals(2, offload.optimize(CostModels.responseTime()).cost, 0);
+        Assert.assertNull(offload.buckets);
+
+        // each cost fits, and so do the keys, but merging b and c would add up to more than
+        // floats hold exactly
+        a = new Offload.Node(0, 0, false);
+        b = new Offload.Node(10000000, 10000000);
+        c = new Offload.Node(10000001, 10000000);
+        a.setEdge(b, 1);
+        b.setEdge(c, 1);
+        offload = new Offload(a, b, c);
+        offload.setIntegerCosts(true);
+        offload.optimize(CostModels.responseTime());
+        Assert.assertNull(offload.buckets);
+    }
+
+    @Test
+    public void testResultViews()
+        throws Exception {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        Offload.Result result = new Offload(nodes).optimize(CostModels.responseTime());
+
+        Assert.assertFalse(result.isRemote(1));
+        Assert.assertTrue(result.isRemote(2));
+        Assert.assertEquals(2, result.local.size());
+        Assert.assertEquals(Arrays.asList(nodes[2], nodes[3], nodes[4], nodes[5]), new ArrayList(result.remote));
+        Assert.assertTrue(result.local.contains(nodes[0]));
+        Assert.assertFalse(result.local.contains(nodes[5]));
+        Assert.assertFalse(result.remote.contains(new Offload.Node(1, 1)));
+
+        try {
+            result.remote.add(nodes[0]);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // the sets can't be changed
+        }
+    }
+
+    @Test
+    public void testReuse()
+        throws Exception {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        Offload offload = new Offload(nodes);
+        offload.setReuse(true);
+        offload.setIntegerCosts(true);
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        Assert.assertEquals(14, result.cost, 0);
+        Assert.assertEquals(4, result.remote.size());
+        SparseGraph m = offload.m, compiled = offload.compiled;
+        int[][] targets = compiled.targets;
+        float[] costs = compiled.costs[1];
+        Offload.InternalNode node = offload.nodes[1];
+        BucketQueue buckets = offload.buckets;
+
+        // the working state and the result are updated in place
+        CostModel cheap = CostModels.scaledTransmission(CostModels.responseTime(), 0.1f);
+        Offload.Result other = offload.optimize(cheap);
+        Assert.assertSame(result, other);
+        Assert.assertSame(m, offload.m);
+        Assert.assertSame(compiled, offload.compiled);
+        Assert.assertSame(targets, offload.compiled.targets);
+        Assert.assertSame(costs, offload.compiled.costs[1]);
+        Assert.assertEquals(1, offload.compiled.cost(0, 1), 0.0001f);
+        Assert.assertSame(node, offload.nodes[1]);
+        Offload.Result expected = new Offload(TestGraphs.paperGraph()).optimize(cheap);
+        Assert.assertEquals(expected.cost, result.cost, 0);
+        Assert.assertEquals(expected.partition, result.partition);
+        Assert.assertEquals(expected.stats.phases, result.stats.phases);
+        // the sets follow the partition
+        Assert.assertEquals("{1, 2, 3, 4, 5}", result.partition.toString());
+        Assert.assertEquals(5, result.remote.size());
+        Assert.assertEquals(1, result.local.size());
+        Assert.assertEquals(new HashSet<Offload.Node>(Arrays.asList(nodes).subList(1, 6)), result.remote);
+
+        Assert.assertSame(result, offload.optimize(CostModels.responseTime()));
+        Assert.assertSame(buckets, offload.buckets);
+        Assert.assertEquals(14, result.cost, 0);
+        Assert.assertEquals("{2, 3, 4, 5}", result.partition.toString());
+        Assert.assertEquals(4, result.remote.size());
+        Assert.assertEquals(2, result.local.size());
+
+        // a new edge means compiling the graph again, the result stays
+        nodes[0].setEdge(nodes[2], 100);
+        Assert.assertSame(result, offload.optimize(CostModels.responseTime()));
+        Assert.assertEquals(17, result.cost, 0);
+
+        offload.setReuse(false);
+        Assert.assertNotSame(result, offload.optimize(CostModels.responseTime()));
+    }
+
+    @Test
+    public void testStats()
+        throws Exception {
+        final List<Float> costs = new ArrayList<Float>();
+        Offload offload = new Offload(a, b, c, d, e, f);
+        offload.setListener(new OptimizationListener() {
+            public void phaseCompleted(int phase, float cost) {
+                Assert.assertEquals(costs.size() + 1, phase);
+                costs.add(cost);
+            }
+        });
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+
+        // d is merged into a, the other four each take a phase
+        OptimizationStats stats = result.stats;
+        Assert.assertEquals(4, stats.phases);
+        Assert.assertEquals(5, stats.merges);
+        Assert.assertEquals(5, stats.vertices);
+        Assert.assertEquals(5, stats.edges);
+        Assert.assertEquals(4, costs.size());
+        Assert.assertEquals(result.cost, Collections.min(costs), 0);
+        Assert.assertTrue(stats.totalNanos >= stats.prepareNanos + stats.reduceNanos + stats.cutNanos);
+    }
+
+    @Test
+    public void testDeadline()
+        throws Exception {
+        Offload offload = new Offload(a, b, c, d, e, f);
+        Offload.Result expected = offload.optimize(CostModels.responseTime());
+
+        Offload.Result result = offload.optimize(CostModels.responseTime(), 1, TimeUnit.HOURS);
+        Assert.assertFalse(result.partial);
+        Assert.assertEquals(expected.remote, result.remote);
+        Assert.assertEquals(expected.cost, result.cost, 0);
+
+        // nothing was done by the deadline, so everything stays local
+        result = offload.optimize(CostModels.responseTime(), 0, TimeUnit.SECONDS);
+        Assert.assertTrue(result.partial);
+        Assert.assertTrue(result.remote.isEmpty());
+        Assert.assertEquals(result.originalCost, result.cost, 0);
+
+        offload.setSolver(Solvers.maxFlow());
+        Thread.currentThread().interrupt();
+        try {
+            result = offload.optimize(CostModels.responseTime(), 1, TimeUnit.HOURS);
+        } finally {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        Assert.assertTrue(result.partial);
+        Assert.assertTrue(result.remote.isEmpty());
+        Assert.assertEquals(result.originalCost, result.cost, 0);
+
+        // without a timeout an interrupt doesn't stop it
+        offload.setSolver(Solvers.mcop());
+        Thread.currentThread().interrupt();
+        try {
+            result = offload.optimize(CostModels.responseTime());
+        } finally {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        Assert.assertFalse(result.partial);
+        Assert.assertEquals(expected.cost, result.cost, 0);
+    }
+
+    /**
+     * Every node is linked to the first one and the one before, every other node is unoffloadable
+     */
+    static Offload largeGraph(int size) {
+        GraphBuilder builder = new GraphBuilder(size, 2 * size);
+        builder.addNode(0, 0, false);
+        for (int i = 1; i < size; i++) {
+            builder.addNode(5, 1, i % 2 == 0);
+            builder.addEdge(0, i, 1);
+            builder.addEdge(i - 1, i, 1);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testDeadlineLargeGraph()
+        throws Exception {
+        // merging the unoffloadable nodes alone takes far longer than the timeout, with and
+        // without shrinking the graph first
+        for (boolean reduce : new boolean[] { false, true }) {
+            Offload offload = largeGraph(40000);
+            offload.setReductions(reduce);
+            long start = System.nanoTime();
+            Offload.Result result = offload.optimize(CostModels.responseTime(), 20, TimeUnit.MILLISECONDS);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Assert.assertTrue(result.partial);
+            Assert.assertTrue(result.remote.isEmpty());
+            Assert.assertEquals(result.originalCost, result.cost, 0);
+            Assert.assertTrue("took " + elapsed + " ms", elapsed < 500);
+        }
+    }
+
+    @Test
+    public void testPartialNotReused()
+        throws Exception {
+        Offload offload = new Offload(a, b, c, d, e, f);
+        offload.setIncremental(true);
+        Offload.Result partial = offload.optimize(CostModels.responseTime(), 0, TimeUnit.SECONDS);
+        Assert.assertTrue(partial.partial);
+        Assert.assertNull(offload.lastResult);
+        Assert.assertNull(offload.lastRemote);
+
+        // the next optimization runs in full instead of keeping the partial result
+        Offload.Result result = offload.optimize(CostModels.responseTime());
+        Assert.assertNotSame(partial, result);
+        Assert.assertFalse(result.partial);
+        Assert.assertEquals(new Offload(a, b, c, d, e, f).optimize(CostModels.responseTime()).cost, result.cost, 0);
+    }
 }
@@ -0,0 +1,79 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResultCacheTest {
+    @Test
+    public void testHits()
+        throws Exception {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        ResultCache cache = new ResultCache(new Offload(nodes), 2, 0.01f);
+
+        Offload.Result result = cache.optimize(CostModels.responseTime());
+        Assert.assertEquals(14, result.cost, 0);
+        Assert.assertSame(result, cache.optimize(CostModels.responseTime()));
+        // practically the same costs
+        Assert.assertSame(result, cache.optimize(CostModels.scaledTransmission(CostModels.responseTime(), 1.001f)));
+        Assert.assertEquals(2, cache.hits());
+        Assert.assertEquals(1, cache.misses());
+
+        Offload.Result slow = cache.optimize(CostModels.scaledTransmission(CostModels.responseTime(), 2));
+        Assert.assertNotSame(result, slow);
+        Assert.assertEquals(2, cache.misses());
+        Assert.assertEquals(2, cache.size());
+
+        // the least recently used result makes room
+        cache.optimize(CostModels.responseTime());
+        cache.optimize(CostModels.energyConsumption(0.9f, 0.3f, 1.3f));
+        Assert.assertEquals(3, cache.hits());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(result, cache.optimize(CostModels.responseTime()));
+        Assert.assertNotSame(slow, cache.optimize(CostModels.scaledTransmission(CostModels.responseTime(), 2)));
+        Assert.assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void testGraphChanged()
+        throws Exception {
+        Offload.Node[] nodes = TestGraphs.paperGraph();
+        ResultCache cache = new ResultCache(new Offload(nodes), 4, 0);
+        cache.optimize(CostModels.responseTime());
+
+        // an edge which keeps c local
+        nodes[0].setEdge(nodes[2], 100);
+        Offload.Result result = cache.optimize(CostModels.responseTime());
+        Assert.assertEquals(2, cache.misses());
+        Assert.assertEquals(17, result.cost, 0);
+
+        // exact costs only
+        cache.optimize(CostModels.scaledTransmission(CostModels.responseTime(), 1.001f));
+        Assert.assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testReuse()
+        throws Exception {
+        Offload offload = new Offload(TestGraphs.paperGraph());
+        offload.setReuse(true);
+        ResultCache cache = new ResultCache(offload, 4, 0);
+
+        // the entries don't change with the results the Offload reuses
+        Offload.Result time = cache.optimize(CostModels.responseTime());
+        CostModel cheap = CostModels.scaledTransmission(CostModels.responseTime(), 0.1f);
+        Offload.Result expected = new Offload(TestGraphs.paperGraph()).optimize(cheap);
+        Offload.Result result = cache.optimize(cheap);
+        Assert.assertNotSame(time, result);
+        Assert.assertEquals(expected.cost, result.cost, 0);
+        Assert.assertEquals("{1, 2, 3, 4, 5}", result.partition.toString());
+
+        Assert.assertSame(time, cache.optimize(CostModels.responseTime()));
+        Assert.assertEquals(14, time.cost, 0);
+        Assert.assertEquals("{2, 3, 4, 5}", time.partition.toString());
+        Assert.assertEquals(4, time.remote.size());
+        Assert.assertSame(result, cache.optimize(cheap));
+        Assert.assertEquals(expected.cost, result.cost, 0);
+        Assert.assertEquals(2, cache.hits());
+        Assert.assertEquals(2, cache.misses());
+    }
+}
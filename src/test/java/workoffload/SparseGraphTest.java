@@ -0,0 +1,169 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+public class SparseGraphTest {
+    @Test
+    public void testEdges()
+        throws Exception {
+        SparseGraph graph = new SparseGraph(4);
+        Assert.assertTrue(graph.setEdge(0, 1, 2));
+        Assert.assertEquals(2, graph.cost(1, 0), 0);
+
+        // setting an existing edge replaces its cost, adding to it sums
+        // the costs of parallel edges
+        Assert.assertFalse(graph.setEdge(1, 0, 3));
+        Assert.assertEquals(3, graph.cost(0, 1), 0);
+        graph.addEdge(0, 1, 4);
+        graph.addEdge(1, 0, 1);
+        Assert.assertEquals(8, graph.cost(0, 1), 0);
+        Assert.assertEquals(8, graph.cost(1, 0), 0);
+        Assert.assertEquals(1, graph.edgeCount());
+
+        graph.addEdge(2, 1, 5);
+        Assert.assertEquals(2, graph.edgeCount());
+        Assert.assertEquals(13, graph.weightedDegree(1), 0);
+        Assert.assertEquals(-1, graph.cost(0, 2), 0);
+        Assert.assertEquals(-1, graph.cost(3, 0), 0);
+    }
+
+    @Test
+    public void testFromEdges()
+        throws Exception {
+        // the third edge repeats the first one the other way round
+        int[] source = { 0, 1, 1, 3 };
+        int[] target = { 1, 2, 0, 1 };
+        int[] slots = new int[2 * source.length];
+        SparseGraph graph = SparseGraph.fromEdges(5, source, target, slots);
+        Assert.assertEquals(3, graph.edgeCount());
+
+        // the same lists as setting the edges one by one
+        SparseGraph expected = new SparseGraph(5);
+        for (int k = 0; k < source.length; k++) {
+            expected.setEdge(source[k], target[k], 0);
+        }
+        for (int v = 0; v < 5; v++) {
+            Assert.assertEquals(expected.degree[v], graph.degree[v]);
+            for (int i = 0; i < graph.degree[v]; i++) {
+                Assert.assertEquals(expected.targets[v][i], graph.targets[v][i]);
+            }
+        }
+
+        // each edge's slots point at the other end in both lists
+        for (int k = 0; k < source.length; k++) {
+            Assert.assertEquals(target[k], graph.targets[source[k]][slots[2 * k]]);
+            Assert.assertEquals(source[k], graph.targets[target[k]][slots[2 * k + 1]]);
+        }
+        Assert.assertEquals(slots[0], slots[2 * 2 + 1]);
+        Assert.assertEquals(slots[1], slots[2 * 2]);
+
+        // a graph with the same edges shares the lists but has its own costs
+        SparseGraph copy = SparseGraph.withEdgesOf(graph);
+        Assert.assertSame(graph.targets[1], copy.targets[1]);
+        copy.costs[1][0] = 4;
+        Assert.assertEquals(0, graph.cost(1, 0), 0);
+        Assert.assertEquals(4, copy.cost(1, 0), 0);
+        Assert.assertSame(SparseGraph.NO_TARGETS, graph.targets[4]);
+    }
+
+    @Test
+    public void testRemoveVertex()
+        throws Exception {
+        SparseGraph graph = new SparseGraph(4);
+        graph.setEdge(0, 1, 1);
+        graph.setEdge(1, 2, 2);
+        graph.setEdge(1, 3, 3);
+        graph.setEdge(2, 3, 4);
+
+        graph.removeVertex(1);
+        Assert.assertEquals(0, graph.degree[1]);
+        Assert.assertEquals(0, graph.degree[0]);
+        Assert.assertEquals(-1, graph.cost(2, 1), 0);
+        Assert.assertEquals(4, graph.cost(2, 3), 0);
+        Assert.assertEquals(1, graph.edgeCount());
+        Assert.assertSame(SparseGraph.NO_TARGETS, graph.targets[1]);
+
+        // a vertex without edges can get new ones
+        graph.setEdge(1, 0, 5);
+        Assert.assertEquals(5, graph.cost(0, 1), 0);
+        Assert.assertEquals(2, graph.edgeCount());
+    }
+
+    @Test
+    public void testMerge()
+        throws Exception {
+        // 0 and 1 share the neighbour 2, only 1 is linked to 3
+        SparseGraph graph = new SparseGraph(5);
+        graph.setEdge(0, 1, 1);
+        graph.setEdge(0, 2, 2);
+        graph.setEdge(1, 2, 3);
+        graph.setEdge(1, 3, 4);
+        graph.setEdge(3, 4, 5);
+
+        graph.merge(0, 1);
+        Assert.assertEquals(0, graph.degree[1]);
+        Assert.assertEquals(-1, graph.cost(0, 1), 0);
+        Assert.assertEquals(5, graph.cost(0, 2), 0);
+        Assert.assertEquals(5, graph.cost(2, 0), 0);
+        Assert.assertEquals(4, graph.cost(3, 0), 0);
+        Assert.assertEquals(-1, graph.cost(3, 1), 0);
+        Assert.assertEquals(5, graph.cost(3, 4), 0);
+        Assert.assertEquals(3, graph.edgeCount());
+        Assert.assertEquals(9, graph.weightedDegree(0), 0);
+    }
+
+    @Test
+    public void testParallelMerge()
+        throws Exception {
+        int n = 2 * SparseGraph.PARALLEL_CHUNK + 10;
+        SparseGraph graph = new SparseGraph(n);
+        graph.setEdge(0, 1, 1);
+        for (int v = 2; v < n; v++) {
+            graph.setEdge(1, v, v);
+            if (v % 2 == 0)
+                graph.setEdge(0, v, 1);
+        }
+        SparseGraph expected = new SparseGraph(graph);
+        expected.merge(0, 1);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        graph.merge(0, 1, pool, 1);
+        pool.shutdown();
+        Assert.assertEquals(expected.edgeCount(), graph.edgeCount());
+        for (int v = 2; v < n; v++) {
+            float cost = v % 2 == 0 ? v + 1 : v;
+            Assert.assertEquals(cost, graph.cost(0, v), 0);
+            Assert.assertEquals(cost, graph.cost(v, 0), 0);
+            Assert.assertEquals(-1, graph.cost(v, 1), 0);
+        }
+    }
+
+    @Test
+    public void testCopy()
+        throws Exception {
+        SparseGraph graph = new SparseGraph(3);
+        graph.setEdge(0, 1, 1);
+        graph.setEdge(1, 2, 2);
+
+        // a deep copy isn't changed by merging the original
+        SparseGraph copy = new SparseGraph(graph);
+        graph.merge(1, 2);
+        Assert.assertEquals(2, copy.cost(2, 1), 0);
+        Assert.assertEquals(2, copy.edgeCount());
+
+        // copying back into a graph which retains its rows reuses them
+        graph.retainRows = true;
+        int[] row = graph.targets[1];
+        graph.copyFrom(copy);
+        Assert.assertSame(row, graph.targets[1]);
+        Assert.assertEquals(2, graph.cost(1, 2), 0);
+        Assert.assertEquals(2, graph.edgeCount());
+
+        graph.removeVertex(1);
+        Assert.assertSame(row, graph.targets[1]);
+        Assert.assertEquals(0, graph.edgeCount());
+    }
+}
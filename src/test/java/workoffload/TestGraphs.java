@@ -0,0 +1,32 @@
+package workoffload;
+
+/**
+ * Graphs which several tests share
+ */
+class TestGraphs {
+    private TestGraphs() {
+    }
+
+    /**
+     * The example graph of the MCOP paper: offloading c, d, e and f costs 14 in response time.
+     * Each call returns new nodes, so tests can change them.
+     */
+    static Offload.Node[] paperGraph() {
+        Offload.Node a = new Offload.Node(0, 0, false);
+        Offload.Node b = new Offload.Node(3, 1);
+        Offload.Node c = new Offload.Node(3, 1);
+        Offload.Node d = new Offload.Node(6, 2);
+        Offload.Node e = new Offload.Node(6, 2);
+        Offload.Node f = new Offload.Node(9, 3);
+
+        a.setEdge(b, 10);
+        b.setEdge(c, 1);
+        b.setEdge(d, 2);
+        c.setEdge(d, 1);
+        c.setEdge(e, 1);
+        d.setEdge(e, 2);
+        d.setEdge(f, 1);
+        e.setEdge(f, 1);
+        return new Offload.Node[] { a, b, c, d, e, f };
+    }
+}
@@ -0,0 +1,74 @@
+package workoffload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TieredOffloadTest {
+    static final float INF = Float.POSITIVE_INFINITY;
+
+    /** device, edge server and cloud: the edge server is close, the cloud far away from both */
+    static final float[][] FACTORS = {
+        { 0, 1, 5 },
+        { 1, 0, 4 },
+        { 5, 4, 0 },
+    };
+
+    @Test
+    public void testThreeTiers() {
+        TieredOffload offload = new TieredOffload(3);
+        int camera = offload.addNode(0, INF, INF);
+        int track = offload.addNode(10, 3, 1);
+        int recognize = offload.addNode(50, 20, 5);
+        offload.addEdge(camera, track, 4);
+        offload.addEdge(track, recognize, 1);
+
+        TieredOffload.Result result = offload.optimize(CostModels.tieredResponseTime(FACTORS));
+        Assert.assertEquals(0, result.tier(camera));
+        Assert.assertEquals(1, result.tier(track));
+        Assert.assertEquals(2, result.tier(recognize));
+        Assert.assertEquals(16, result.cost, 0);
+        Assert.assertEquals(60, result.originalCost, 0);
+    }
+
+    @Test
+    public void testAgainstBruteForce() {
+        Random random = new Random(1);
+        float[][] factors = { { 0, 2, 2 }, { 2, 0, 2 }, { 2, 2, 0 } };
+        TieredCostModel model = CostModels.tieredResponseTime(factors);
+        for (int round = 0; round < 200; round++) {
+            int size = 2 + random.nextInt(7);
+            TieredOffload offload = new TieredOffload(3);
+            offload.addNode(0, INF, INF);
+            for (int v = 1; v < size; v++) {
+                offload.addNode(random.nextInt(20), random.nextInt(20), random.nextInt(4) == 0 ? INF : random.nextInt(20));
+            }
+            for (int e = random.nextInt(2 * size); e >= 0; e--) {
+                offload.addEdge(random.nextInt(size), random.nextInt(size), random.nextInt(10));
+            }
+
+            TieredOffload.Result result = offload.optimize(model);
+            float[] costs = new float[size * 3];
+            System.arraycopy(offload.nodeCosts, 0, costs, 0, costs.length);
+            Assert.assertEquals(offload.cost(model, costs, result.tiers), result.cost, 1e-3);
+            Assert.assertTrue(result.cost <= result.originalCost);
+
+            double best = Double.POSITIVE_INFINITY;
+            int[] assignment = new int[size];
+            for (int code = 0; code < Math.pow(3, size); code++) {
+                for (int v = 0, c = code; v < size; v++, c /= 3) {
+                    assignment[v] = c % 3;
+                }
+                best = Math.min(best, offload.cost(model, costs, assignment));
+            }
+            // the guarantee for expansion moves with the same cost between every pair of tiers
+            Assert.assertTrue(result.cost <= 2 * best + 1e-3);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDeviceRequired() {
+        new TieredOffload(3).addNode(INF, 1, 1);
+    }
+}